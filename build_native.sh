@@ -0,0 +1,54 @@
+#!/bin/bash
+#
+#  Copyright 2023 The original authors
+#
+#  Licensed under the Apache License, Version 2.0 (the "License");
+#  you may not use this file except in compliance with the License.
+#  You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+#  Unless required by applicable law or agreed to in writing, software
+#  distributed under the License is distributed on an "AS IS" BASIS,
+#  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#  See the License for the specific language governing permissions and
+#  limitations under the License.
+#
+
+# Builds CalculateAverage_<fork> as a native image with the "native" Maven profile.
+# With a training file, also builds a PGO image: an instrumented image is run once on
+# the training file and its profile is fed into a second build.
+#
+#   ./build_native.sh thomaswue                                      -> target/image_calculateaverage_thomaswue
+#   ./build_native.sh thomaswue src/test/resources/samples/measurements-10000-unique-keys.txt
+#                                                                    -> also target/image_calculateaverage_thomaswue_pgo
+#
+# PGO requires Oracle GraalVM (21.0.1-graal), GraalVM Community Edition ignores it.
+
+set -eo pipefail
+
+if [ -z "$1" ]; then
+  echo "Usage: build_native.sh <fork name> [<training file>]"
+  exit 1
+fi
+
+FORK=$1
+IMAGE=image_calculateaverage_$FORK
+
+source "$HOME/.sdkman/bin/sdkman-init.sh"
+sdk use java 21.0.1-graal 1>&2
+
+./mvnw --quiet -Dquick -Pnative -Dsolver=$FORK package
+
+if [ -n "$2" ]; then
+  ./mvnw --quiet -Dquick -Pnative -Dsolver=$FORK -Dnative.imageName=${IMAGE}_instrumented -Dpgo.instrument package
+
+  # Solvers read ./measurements.txt, so train in a directory of its own.
+  TRAINING_DIR=$(mktemp -d)
+  ln -s "$(realpath "$2")" "$TRAINING_DIR/measurements.txt"
+  (cd "$TRAINING_DIR" && "$OLDPWD/target/${IMAGE}_instrumented" > /dev/null)
+  mv "$TRAINING_DIR/default.iprof" target/$FORK.iprof
+  rm -r "$TRAINING_DIR"
+
+  ./mvnw --quiet -Dquick -Pnative -Dsolver=$FORK -Dnative.imageName=${IMAGE}_pgo -Dpgo.profile="$PWD/target/$FORK.iprof" package
+fi
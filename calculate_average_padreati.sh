@@ -17,4 +17,5 @@
 
 
 JAVA_OPTS="--enable-preview --add-modules jdk.incubator.vector"
-java $JAVA_OPTS --class-path target/average-1.0.0-SNAPSHOT.jar dev.morling.onebrc.CalculateAverage_padreati
+. ./fast_start.sh
+fast_start_java padreati $JAVA_OPTS --class-path target/average-1.0.0-SNAPSHOT.jar dev.morling.onebrc.CalculateAverage_padreati
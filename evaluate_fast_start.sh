@@ -0,0 +1,40 @@
+#!/bin/bash
+#
+#  Copyright 2023 The original authors
+#
+#  Licensed under the Apache License, Version 2.0 (the "License");
+#  you may not use this file except in compliance with the License.
+#  You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+#  Unless required by applicable law or agreed to in writing, software
+#  distributed under the License is distributed on an "AS IS" BASIS,
+#  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#  See the License for the specific language governing permissions and
+#  limitations under the License.
+#
+
+# Measures the startup time saved by fast_start.sh: each fork is trained, then run
+# with and without its archive on a one-line file, so that the run time is
+# dominated by JVM startup. The results end up in fast_start.md.
+
+set -eo pipefail
+
+if [ -z "$1" ]; then
+  echo "Usage: evaluate_fast_start.sh <fork name> (<fork name 2> ...)"
+  exit 1
+fi
+
+for FORK in "$@"; do
+  ./train_fast_start.sh $FORK
+done
+
+rm -f measurements.txt
+ln -s src/test/resources/samples/measurements-1.txt measurements.txt
+
+FORKS=$(IFS=,; echo "$*")
+hyperfine --warmup 2 --runs 10 \
+  -L fork $FORKS -L mode off,on \
+  --export-markdown fast_start.md \
+  "FAST_START={mode} ./calculate_average_{fork}.sh"
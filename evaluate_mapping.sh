@@ -0,0 +1,37 @@
+#!/bin/bash
+#
+#  Copyright 2023 The original authors
+#
+#  Licensed under the Apache License, Version 2.0 (the "License");
+#  you may not use this file except in compliance with the License.
+#  You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+#  Unless required by applicable law or agreed to in writing, software
+#  distributed under the License is distributed on an "AS IS" BASIS,
+#  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#  See the License for the specific language governing permissions and
+#  limitations under the License.
+#
+
+# Compares the mapping modes of the core engine (--mapping=plain|advised|prefault) and the
+# read pipeline through and around the page cache (--read, --direct) on the 1B row file,
+# once with a cold page cache, dropped before every run (needs sudo), and once with a warm
+# one. The results end up in mapping-cold.md and mapping-warm.md.
+
+set -eo pipefail
+
+rm -f measurements.txt
+ln -s measurements_1B.txt measurements.txt
+
+hyperfine --runs 5 \
+  --prepare "sync; echo 3 | sudo tee /proc/sys/vm/drop_caches > /dev/null" \
+  -L input --mapping=plain,--mapping=advised,--mapping=prefault,--read,--direct \
+  --export-markdown mapping-cold.md \
+  --command-name "cold {input}" "./calculate_average_core.sh {input}"
+
+hyperfine --warmup 1 --runs 5 \
+  -L input --mapping=plain,--mapping=advised,--mapping=prefault,--read,--direct \
+  --export-markdown mapping-warm.md \
+  --command-name "warm {input}" "./calculate_average_core.sh {input}"
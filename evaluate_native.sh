@@ -0,0 +1,50 @@
+#!/bin/bash
+#
+#  Copyright 2023 The original authors
+#
+#  Licensed under the Apache License, Version 2.0 (the "License");
+#  you may not use this file except in compliance with the License.
+#  You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+#  Unless required by applicable law or agreed to in writing, software
+#  distributed under the License is distributed on an "AS IS" BASIS,
+#  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#  See the License for the specific language governing permissions and
+#  limitations under the License.
+#
+
+# Compares each fork on the 1B row file in JVM mode, as a native image and as a PGO
+# native image, as built by build_native.sh with a training file. The results of all
+# forks end up in one markdown table in native.md. JAVA_OPTS applies to JVM mode.
+
+set -eo pipefail
+
+if [ -z "$1" ]; then
+  echo "Usage: evaluate_native.sh <fork name> (<fork name 2> ...)"
+  exit 1
+fi
+
+JAVA_OPTS=${JAVA_OPTS:-"--enable-preview"}
+
+rm -f measurements.txt
+ln -s measurements_1B.txt measurements.txt
+
+rm -f native.md
+for FORK in "$@"; do
+  IMAGE=target/image_calculateaverage_$FORK
+  numactl --physcpubind=0-7 hyperfine --warmup 1 --runs 5 \
+    --export-markdown native_$FORK.md \
+    --command-name "$FORK jvm" "java $JAVA_OPTS --class-path target/average-1.0.0-SNAPSHOT.jar dev.morling.onebrc.CalculateAverage_$FORK" \
+    --command-name "$FORK native" "$IMAGE" \
+    --command-name "$FORK native+pgo" "${IMAGE}_pgo"
+  # Keep the table header of the first fork only.
+  if [ -f native.md ]; then
+    tail -n +3 native_$FORK.md >> native.md
+  else
+    cat native_$FORK.md > native.md
+  fi
+  rm native_$FORK.md
+done
+cat native.md
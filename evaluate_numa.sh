@@ -0,0 +1,36 @@
+#!/bin/bash
+#
+#  Copyright 2023 The original authors
+#
+#  Licensed under the Apache License, Version 2.0 (the "License");
+#  you may not use this file except in compliance with the License.
+#  You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+#  Unless required by applicable law or agreed to in writing, software
+#  distributed under the License is distributed on an "AS IS" BASIS,
+#  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#  See the License for the specific language governing permissions and
+#  limitations under the License.
+#
+
+# Scaling of the core engine from one to two NUMA nodes on the 1B row file, with and
+# without --numa placement. Node 0 runs with its own memory only; both nodes run with
+# the threads of both. The results end up in numa.md.
+
+set -eo pipefail
+
+NODE0_CPUS=$(cat /sys/devices/system/node/node0/cpulist)
+NODE1_CPUS=$(cat /sys/devices/system/node/node1/cpulist)
+NODE0_THREADS=$(numactl --physcpubind=$NODE0_CPUS nproc)
+ALL_THREADS=$(numactl --physcpubind=$NODE0_CPUS,$NODE1_CPUS nproc)
+
+rm -f measurements.txt
+ln -s measurements_1B.txt measurements.txt
+
+hyperfine --warmup 1 --runs 5 \
+  -L placement "",--numa \
+  --export-markdown numa.md \
+  --command-name "1 node {placement}" "numactl --cpunodebind=0 --membind=0 ./calculate_average_core.sh --threads=$NODE0_THREADS {placement}" \
+  --command-name "2 nodes {placement}" "numactl --cpunodebind=0,1 ./calculate_average_core.sh --threads=$ALL_THREADS {placement}"
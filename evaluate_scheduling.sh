@@ -0,0 +1,36 @@
+#!/bin/bash
+#
+#  Copyright 2023 The original authors
+#
+#  Licensed under the Apache License, Version 2.0 (the "License");
+#  you may not use this file except in compliance with the License.
+#  You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+#  Unless required by applicable law or agreed to in writing, software
+#  distributed under the License is distributed on an "AS IS" BASIS,
+#  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#  See the License for the specific language governing permissions and
+#  limitations under the License.
+#
+
+# Compares the segment scheduling strategies of the core engine on the 1B row file,
+# then prints the per-worker busy/idle times of one run of each.
+
+set -eo pipefail
+
+THREADS=${1:-8}
+
+rm -f measurements.txt
+ln -s measurements_1B.txt measurements.txt
+
+numactl --physcpubind=0-$((THREADS - 1)) hyperfine --warmup 1 --runs 5 \
+  -L scheduling static,fixed,adaptive \
+  --export-markdown scheduling.md \
+  "./calculate_average_core.sh --threads=$THREADS --scheduling={scheduling}"
+
+for scheduling in static fixed adaptive; do
+  echo "$scheduling:"
+  ./calculate_average_core.sh --threads=$THREADS --scheduling=$scheduling --worker-stats 2>&1 >/dev/null
+done
@@ -0,0 +1,59 @@
+#!/bin/sh
+#
+#  Copyright 2023 The original authors
+#
+#  Licensed under the Apache License, Version 2.0 (the "License");
+#  you may not use this file except in compliance with the License.
+#  You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+#  Unless required by applicable law or agreed to in writing, software
+#  distributed under the License is distributed on an "AS IS" BASIS,
+#  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#  See the License for the specific language governing permissions and
+#  limitations under the License.
+#
+
+# Sourced by the calculate_average_<fork>.sh scripts of the solvers that cannot be
+# built as native images. fast_start_java <fork> <java arguments...> runs java with
+# the startup archive that train_fast_start.sh created for the fork, if there is one:
+#
+#   target/fast-start/<fork>.aot  AOT cache of loaded classes and JIT profiles (JDK 25+)
+#   target/fast-start/<fork>.jsa  dynamic class-data-sharing archive (older JDKs)
+#
+# FAST_START=train creates the archive from this run instead, FAST_START=off ignores it.
+# An archive no longer matching the jar or the JVM options is ignored by the JVM, which
+# warns about it on stderr rather than in the middle of the solver's output.
+
+FAST_START_DIR=target/fast-start
+FAST_START_LOG="-Xlog:disable -Xlog:all=warning:stderr"
+
+fast_start_java() {
+  local fork=$1
+  shift
+  case "${FAST_START:-on}" in
+    train)
+      mkdir -p $FAST_START_DIR
+      rm -f "${FAST_START_DIR:?}/${fork:?}".aot "${FAST_START_DIR:?}/${fork:?}".jsa
+      local version=$(java -XshowSettings:properties -version 2>&1 | sed -n 's/^ *java.specification.version = //p')
+      if [ "${version%%.*}" -ge 25 ]; then
+        java -XX:AOTCacheOutput=$FAST_START_DIR/$fork.aot "$@"
+      else
+        java -XX:ArchiveClassesAtExit=$FAST_START_DIR/$fork.jsa "$@"
+      fi
+      ;;
+    off)
+      java "$@"
+      ;;
+    *)
+      if [ -f $FAST_START_DIR/$fork.aot ]; then
+        java $FAST_START_LOG -XX:AOTCache=$FAST_START_DIR/$fork.aot "$@"
+      elif [ -f $FAST_START_DIR/$fork.jsa ]; then
+        java $FAST_START_LOG -XX:SharedArchiveFile=$FAST_START_DIR/$fork.jsa "$@"
+      else
+        java "$@"
+      fi
+      ;;
+  esac
+}
@@ -0,0 +1,169 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.jmh;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Copy of {@code CalculateAverage_artsiomkorzun.Aggregates} and its row types, which are private to the solver.
+ * {@link #merge(Aggregate)} inserts a copy of unseen aggregates instead of the instance itself, so that benchmark
+ * inputs survive repeated merges.
+ */
+final class Aggregates {
+
+    private static final int GROW_FACTOR = 4;
+    private static final float LOAD_FACTOR = 0.55f;
+
+    static class Row {
+        final byte[] station = new byte[256];
+        int length;
+        int hash;
+        int temperature;
+    }
+
+    static class Aggregate {
+        final byte[] station;
+        final int hash;
+        int min;
+        int max;
+        long sum;
+        int count;
+
+        Aggregate(Row row) {
+            this.station = Arrays.copyOf(row.station, row.length);
+            this.hash = row.hash;
+            this.min = row.temperature;
+            this.max = row.temperature;
+            this.sum = row.temperature;
+            this.count = 1;
+        }
+
+        private Aggregate(Aggregate other) {
+            this.station = other.station;
+            this.hash = other.hash;
+            this.min = other.min;
+            this.max = other.max;
+            this.sum = other.sum;
+            this.count = other.count;
+        }
+
+        void add(Row row) {
+            min = Math.min(min, row.temperature);
+            max = Math.max(max, row.temperature);
+            sum += row.temperature;
+            count++;
+        }
+
+        void merge(Aggregate right) {
+            min = Math.min(min, right.min);
+            max = Math.max(max, right.max);
+            sum += right.sum;
+            count += right.count;
+        }
+    }
+
+    // The hash artsiomkorzun computes while copying the name into the row.
+    static int hash(byte[] station, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 71 * hash + station[i];
+        }
+        return hash;
+    }
+
+    private Aggregate[] aggregates = new Aggregate[1024];
+    private int limit = (int) (aggregates.length * LOAD_FACTOR);
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    void visit(Consumer<Aggregate> consumer) {
+        if (size > 0) {
+            for (Aggregate aggregate : aggregates) {
+                if (aggregate != null) {
+                    consumer.accept(aggregate);
+                }
+            }
+        }
+    }
+
+    void add(Row row) {
+        int index = row.hash & (aggregates.length - 1);
+
+        while (true) {
+            Aggregate aggregate = aggregates[index];
+
+            if (aggregate == null) {
+                aggregates[index] = new Aggregate(row);
+                if (++size >= limit) {
+                    grow();
+                }
+                break;
+            }
+
+            if (row.hash == aggregate.hash && Arrays.equals(row.station, 0, row.length, aggregate.station, 0, aggregate.station.length)) {
+                aggregate.add(row);
+                break;
+            }
+
+            index = (index + 1) & (aggregates.length - 1);
+        }
+    }
+
+    void merge(Aggregate right) {
+        int index = right.hash & (aggregates.length - 1);
+
+        while (true) {
+            Aggregate aggregate = aggregates[index];
+
+            if (aggregate == null) {
+                aggregates[index] = new Aggregate(right);
+                if (++size >= limit) {
+                    grow();
+                }
+                break;
+            }
+
+            if (right.hash == aggregate.hash && Arrays.equals(right.station, aggregate.station)) {
+                aggregate.merge(right);
+                break;
+            }
+
+            index = (index + 1) & (aggregates.length - 1);
+        }
+    }
+
+    private void grow() {
+        Aggregate[] oldAggregates = aggregates;
+        aggregates = new Aggregate[oldAggregates.length * GROW_FACTOR];
+        limit = (int) (aggregates.length * LOAD_FACTOR);
+
+        for (Aggregate aggregate : oldAggregates) {
+            if (aggregate != null) {
+                int index = aggregate.hash & (aggregates.length - 1);
+
+                while (aggregates[index] != null) {
+                    index = (index + 1) & (aggregates.length - 1);
+                }
+
+                aggregates[index] = aggregate;
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.jmh;
+
+import dev.morling.onebrc.core.Aggregator;
+import dev.morling.onebrc.core.ColumnarFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregating a file from its text form, which parses every line, against aggregating the columnar cache created
+ * from it once. Both files are read through the page cache, so the difference is the parsing work saved.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--enable-preview", "--add-modules", "jdk.incubator.vector" })
+public class ColumnarBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Inputs {
+        Path text;
+        Path columnar;
+        ColumnarFile columnarFile;
+        Aggregator aggregator;
+        String station;
+
+        @Setup(Level.Trial)
+        public void setUp(InputState state) throws IOException {
+            Samples.Input input = state.input;
+            text = Files.createTempFile("measurements", ".txt");
+            columnar = Files.createTempFile("measurements", ".col");
+            Files.write(text, input.data().asSlice(0, input.length()).toArray(ValueLayout.JAVA_BYTE));
+            ColumnarFile.convert(text, columnar, 1);
+            columnarFile = ColumnarFile.open(columnar);
+            aggregator = new Aggregator(1);
+            station = new String(input.name(0), StandardCharsets.UTF_8);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            columnarFile.close();
+            Files.delete(text);
+            Files.delete(columnar);
+        }
+    }
+
+    @Benchmark
+    public Object text(Inputs inputs) throws IOException {
+        return inputs.aggregator.aggregate(inputs.text);
+    }
+
+    @Benchmark
+    public Object columnar(Inputs inputs) {
+        return inputs.columnarFile.aggregate(1);
+    }
+
+    @Benchmark
+    public Object columnarSingleStation(Inputs inputs) {
+        return inputs.columnarFile.aggregate(inputs.station);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.jmh;
+
+import dev.morling.onebrc.core.LineTokenizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import static dev.morling.onebrc.jmh.UnsafeAccess.UNSAFE;
+
+/**
+ * Searching the {@code ';'} after each station name. Every variant skips the value with the same byte loop, so the
+ * difference between them is the delimiter search alone. Each operation scans the whole input and returns the sum
+ * of the name lengths. The {@link LineTokenizer} variants find the {@code '\n'} as part of the search and return the
+ * same sum from their batches of tokens.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--enable-preview", "--add-modules", "jdk.incubator.vector" })
+public class DelimiterScanBenchmark {
+
+    private static final VectorSpecies<Byte> BYTE_SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final long SEMICOLONS = 0x3B3B3B3B3B3B3B3BL;
+
+    @State(Scope.Thread)
+    public static class Tokenizers {
+        final LineTokenizer vectorized = LineTokenizer.vectorized();
+        final LineTokenizer swar = LineTokenizer.swar();
+        final LineTokenizer.Batch batch = new LineTokenizer.Batch(1024);
+    }
+
+    @Benchmark
+    public long scalar(InputState state) {
+        long start = state.input.address();
+        long end = start + state.input.length();
+        long total = 0;
+        for (long scanPtr = start; scanPtr < end;) {
+            long nameAddress = scanPtr;
+            while (UNSAFE.getByte(scanPtr) != ';') {
+                scanPtr++;
+            }
+            total += scanPtr - nameAddress;
+            scanPtr = skipValue(scanPtr + 1);
+        }
+        return total;
+    }
+
+    // The 4-byte loop of CalculateAverage_thomaswue.parseLoop, without the hashing.
+    @Benchmark
+    public long thomaswueSwar4(InputState state) {
+        long start = state.input.address();
+        long end = start + state.input.length();
+        long total = 0;
+        for (long scanPtr = start; scanPtr < end;) {
+            long nameAddress = scanPtr;
+            scanPtr++;
+            while (true) {
+                int nextVal = UNSAFE.getInt(scanPtr);
+                if ((nextVal & 0x3B) == 0x3B) {
+                    scanPtr++;
+                    break;
+                }
+                else if ((nextVal & 0x3B00) == 0x3B00) {
+                    scanPtr += 2;
+                    break;
+                }
+                else if ((nextVal & 0x3B0000) == 0x3B0000) {
+                    scanPtr += 3;
+                    break;
+                }
+                else if (((nextVal & 0x3B000000) == 0x3B000000)) {
+                    scanPtr += 4;
+                    break;
+                }
+                scanPtr += 4;
+            }
+            total += scanPtr - nameAddress - 1;
+            scanPtr = skipValue(scanPtr);
+        }
+        return total;
+    }
+
+    // The exact zero-byte SWAR search of the shared engine's SegmentParser.
+    @Benchmark
+    public long engineSwar4(InputState state) {
+        long start = state.input.address();
+        long end = start + state.input.length();
+        long total = 0;
+        for (long scanPtr = start; scanPtr < end;) {
+            long nameAddress = scanPtr;
+            scanPtr++;
+            while (true) {
+                int match = UNSAFE.getInt(scanPtr) ^ 0x3B3B3B3B;
+                match = (match - 0x01010101) & ~match & 0x80808080;
+                if (match != 0) {
+                    scanPtr += (Integer.numberOfTrailingZeros(match) >>> 3) + 1;
+                    break;
+                }
+                scanPtr += 4;
+            }
+            total += scanPtr - nameAddress - 1;
+            scanPtr = skipValue(scanPtr);
+        }
+        return total;
+    }
+
+    // The 8-byte search of CalculateAverage_richardstartin.firstInstance.
+    @Benchmark
+    public long swar8(InputState state) {
+        long start = state.input.address();
+        long end = start + state.input.length();
+        long total = 0;
+        for (long scanPtr = start; scanPtr < end;) {
+            long nameAddress = scanPtr;
+            while (true) {
+                long input = UNSAFE.getLong(scanPtr) ^ SEMICOLONS;
+                long tmp = (input & 0x7F7F7F7F7F7F7F7FL) + 0x7F7F7F7F7F7F7F7FL;
+                tmp = ~(tmp | input | 0x7F7F7F7F7F7F7F7FL);
+                int index = Long.numberOfTrailingZeros(tmp) >>> 3;
+                if (index != Long.BYTES) {
+                    scanPtr += index;
+                    break;
+                }
+                scanPtr += Long.BYTES;
+            }
+            total += scanPtr - nameAddress;
+            scanPtr = skipValue(scanPtr + 1);
+        }
+        return total;
+    }
+
+    // The ByteVector search of CalculateAverage_merykitty.iterate, one line per vector load.
+    @Benchmark
+    public long merykittyByteVector(InputState state) {
+        MemorySegment data = state.input.data();
+        long length = state.input.length();
+        long start = data.address();
+        long total = 0;
+        for (long offset = 0; offset < length;) {
+            var line = ByteVector.fromMemorySegment(BYTE_SPECIES, data, offset, ByteOrder.nativeOrder());
+            long semicolons = line.compare(VectorOperators.EQ, ';').toLong();
+            long semicolonPos;
+            if (semicolons == 0) {
+                semicolonPos = BYTE_SPECIES.vectorByteSize();
+                for (; data.get(ValueLayout.JAVA_BYTE, offset + semicolonPos) != ';'; semicolonPos++) {
+                }
+            }
+            else {
+                semicolonPos = Long.numberOfTrailingZeros(semicolons);
+            }
+            total += semicolonPos;
+            offset = skipValue(start + offset + semicolonPos + 1) - start;
+        }
+        return total;
+    }
+
+    // The shared engine's LineTokenizer, comparing whole vectors against both delimiters.
+    @Benchmark
+    public long engineTokenizerVectorized(InputState state, Tokenizers tokenizers) {
+        return tokenize(state.input, tokenizers.vectorized, tokenizers.batch);
+    }
+
+    // The shared engine's LineTokenizer fallback, a 4-byte SWAR loop as in SegmentParser.
+    @Benchmark
+    public long engineTokenizerSwar(InputState state, Tokenizers tokenizers) {
+        return tokenize(state.input, tokenizers.swar, tokenizers.batch);
+    }
+
+    private static long tokenize(Samples.Input input, LineTokenizer tokenizer, LineTokenizer.Batch batch) {
+        MemorySegment data = input.data();
+        long length = input.length();
+        long total = 0;
+        for (long offset = 0; offset < length;) {
+            offset = tokenizer.tokenize(data, offset, length, batch);
+            int[] tokens = batch.tokens();
+            for (int i = 1; i < batch.lines() * 3; i += 3) {
+                total += tokens[i];
+            }
+        }
+        return total;
+    }
+
+    private static long skipValue(long scanPtr) {
+        while (UNSAFE.getByte(scanPtr) != '\n') {
+            scanPtr++;
+        }
+        return scanPtr + 1;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.jmh;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+
+/**
+ * The input shared by all benchmarks, parameterised over the sample files and the 413 and 10k key sets.
+ */
+@State(Scope.Benchmark)
+public class InputState {
+
+    @Param({ "measurements-1", "measurements-2", "measurements-3", "measurements-10", "measurements-20",
+            "measurements-boundaries", "measurements-complex-utf8", "measurements-10000-unique-keys",
+            Samples.KEYSET_413, Samples.KEYSET_10K, Samples.KEYSET_10K_ZIPF, Samples.KEYSET_10K_HOTSPOT,
+            Samples.KEYSET_10K_ADVERSARIAL })
+    public String shape;
+
+    public Samples.Input input;
+
+    private Arena arena;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        arena = Arena.ofShared();
+        input = Samples.load(shape, arena);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        arena.close();
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.jmh;
+
+import dev.morling.onebrc.core.OffHeapStationTable;
+import dev.morling.onebrc.core.StationTable;
+import dev.morling.onebrc.core.TreeMerge;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merging the per-thread tables into one result. The input is split into {@code threads} contiguous ranges, each
+ * aggregated into its own table up front; an operation merges all of them into a fresh accumulator on one thread, or
+ * along the tree of {@link TreeMerge} on {@code threads} threads. Run with the {@code create-measurements} and
+ * {@code create-measurements3} shapes for the merge time at 413 and 10k keys.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--enable-preview", "--add-modules", "jdk.incubator.vector" })
+public class MergeBenchmark {
+
+    // Copy of CalculateAverage_thomaswue.Result, keyed by String in a HashMap per thread.
+    static class Result {
+        short min;
+        short max;
+        long sum;
+        int count;
+
+        Result(int value) {
+            this.min = (short) value;
+            this.max = (short) value;
+            this.sum = value;
+            this.count = 1;
+        }
+
+        Result(Result other) {
+            this.min = other.min;
+            this.max = other.max;
+            this.sum = other.sum;
+            this.count = other.count;
+        }
+
+        void add(Result other) {
+            min = (short) Math.min(min, other.min);
+            max = (short) Math.max(max, other.max);
+            sum += other.sum;
+            count += other.count;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Partials {
+
+        @Param({ "2", "4", "8", "16", "32", "64" })
+        public int threads;
+
+        List<HashMap<String, Result>> hashMaps;
+        List<Aggregates> aggregates;
+        List<StationTable> stationTables;
+        List<OffHeapStationTable> offHeapStationTables;
+
+        @Setup(Level.Trial)
+        public void setUp(InputState state) {
+            Samples.Input input = state.input;
+            MemorySegment data = input.data();
+            hashMaps = new ArrayList<>();
+            aggregates = new ArrayList<>();
+            stationTables = new ArrayList<>();
+            offHeapStationTables = new ArrayList<>();
+            Aggregates.Row row = new Aggregates.Row();
+            int linesPerThread = Math.ceilDiv(input.lines(), threads);
+            for (int t = 0; t < threads; t++) {
+                var hashMap = new HashMap<String, Result>();
+                var aggregate = new Aggregates();
+                var stationTable = new StationTable();
+                var offHeapStationTable = new OffHeapStationTable();
+                for (int i = t * linesPerThread; i < Math.min((t + 1) * linesPerThread, input.lines()); i++) {
+                    byte[] name = input.name(i);
+                    int value = input.values()[i];
+
+                    Result current = hashMap.putIfAbsent(new String(name, StandardCharsets.UTF_8), new Result(value));
+                    if (current != null) {
+                        current.add(new Result(value));
+                    }
+
+                    MemorySegment.copy(data, ValueLayout.JAVA_BYTE, input.nameOffsets()[i], row.station, 0, name.length);
+                    row.length = name.length;
+                    row.hash = Aggregates.hash(name, name.length);
+                    row.temperature = value;
+                    aggregate.add(row);
+
+                    stationTable.find(input.address() + input.nameOffsets()[i], name.length, StationTable.hash(name)).add(value);
+                    offHeapStationTable.add(input.address() + input.nameOffsets()[i], name.length, StationTable.hash(name), value);
+                }
+                hashMaps.add(hashMap);
+                aggregates.add(aggregate);
+                stationTables.add(stationTable);
+                offHeapStationTables.add(offHeapStationTable);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            offHeapStationTables.forEach(OffHeapStationTable::close);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class TreeMergeState {
+        ExecutorService pool;
+        List<StationTable> copies;
+
+        @Setup(Level.Trial)
+        public void startPool(Partials partials) {
+            pool = Executors.newFixedThreadPool(partials.threads);
+        }
+
+        // The tree merge accumulates into the tables it is given, so every operation starts from fresh copies.
+        @Setup(Level.Invocation)
+        public void copy(Partials partials) {
+            copies = new ArrayList<>(partials.threads);
+            for (StationTable stationTable : partials.stationTables) {
+                StationTable copy = new StationTable();
+                copy.merge(stationTable);
+                copies.add(copy);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void stopPool() {
+            pool.shutdownNow();
+        }
+    }
+
+    // The sequential putIfAbsent loop of CalculateAverage_thomaswue.main.
+    @Benchmark
+    public Object thomaswueHashMap(Partials partials) {
+        HashMap<String, Result> result = new HashMap<>();
+        for (HashMap<String, Result> hashMap : partials.hashMaps) {
+            for (Map.Entry<String, Result> entry : hashMap.entrySet()) {
+                Result current = result.get(entry.getKey());
+                if (current == null) {
+                    result.put(entry.getKey(), new Result(entry.getValue()));
+                }
+                else {
+                    current.add(entry.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    // CalculateAverage_artsiomkorzun.Aggregator.merge, applied sequentially rather than through the CAS loop.
+    @Benchmark
+    public Object artsiomkorzunAggregatesMerge(Partials partials) {
+        Aggregates result = new Aggregates();
+        for (Aggregates aggregates : partials.aggregates) {
+            aggregates.visit(result::merge);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Object engineStationTableMerge(Partials partials) {
+        StationTable result = new StationTable();
+        for (StationTable stationTable : partials.stationTables) {
+            result.merge(stationTable);
+        }
+        return result;
+    }
+
+    // Every pool thread offers one table, as the engine's workers do once they are done parsing. Includes handing the
+    // tasks to the pool.
+    @Benchmark
+    public Object engineStationTableTreeMerge(Partials partials, TreeMergeState state) throws Exception {
+        TreeMerge merge = new TreeMerge(partials.threads);
+        List<Future<?>> offers = new ArrayList<>(partials.threads);
+        for (int i = 0; i < partials.threads; i++) {
+            int party = i;
+            StationTable table = state.copies.get(i);
+            offers.add(state.pool.submit(() -> merge.offer(party, table)));
+        }
+        for (Future<?> offer : offers) {
+            offer.get();
+        }
+        return merge.result();
+    }
+
+    // Includes allocating and freeing the native memory of the accumulator.
+    @Benchmark
+    public int engineOffHeapStationTableMerge(Partials partials) {
+        try (OffHeapStationTable result = new OffHeapStationTable()) {
+            for (OffHeapStationTable offHeapStationTable : partials.offHeapStationTables) {
+                result.merge(offHeapStationTable);
+            }
+            return result.size();
+        }
+    }
+}
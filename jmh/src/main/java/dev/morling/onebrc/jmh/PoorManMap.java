@@ -0,0 +1,133 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.jmh;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Copy of {@code CalculateAverage_merykitty.PoorManMap}, which is private to the solver.
+ */
+final class PoorManMap {
+    static final VectorSpecies<Byte> BYTE_SPECIES = ByteVector.SPECIES_PREFERRED;
+    static final long KEY_MAX_SIZE = 100;
+    static final int R_LOAD_FACTOR = 2;
+
+    static class Aggregator {
+        long min = Integer.MAX_VALUE;
+        long max = Integer.MIN_VALUE;
+        long sum;
+        long count;
+    }
+
+    static class PoorManMapNode {
+        byte[] data;
+        long size;
+        int hash;
+        Aggregator aggr;
+
+        PoorManMapNode(MemorySegment data, long offset, long size, int hash) {
+            this.hash = hash;
+            this.size = size;
+            this.data = new byte[BYTE_SPECIES.vectorByteSize() + (int) KEY_MAX_SIZE];
+            this.aggr = new Aggregator();
+            MemorySegment.copy(data, offset, MemorySegment.ofArray(this.data), BYTE_SPECIES.vectorByteSize(), size);
+        }
+    }
+
+    MemorySegment data;
+    PoorManMapNode[] nodes;
+    int size;
+
+    PoorManMap(MemorySegment data) {
+        this.data = data;
+        this.nodes = new PoorManMapNode[1 << 10];
+    }
+
+    Aggregator indexSimple(long offset, long size, int hash) {
+        hash = rehash(hash);
+        int bucketMask = nodes.length - 1;
+        int bucket = hash & bucketMask;
+        for (;; bucket = (bucket + 1) & bucketMask) {
+            PoorManMapNode node = nodes[bucket];
+            if (node == null) {
+                this.size++;
+                if (this.size * R_LOAD_FACTOR > nodes.length) {
+                    grow();
+                    bucketMask = nodes.length - 1;
+                    for (bucket = hash & bucketMask; nodes[bucket] != null; bucket = (bucket + 1) & bucketMask) {
+                    }
+                }
+                node = new PoorManMapNode(this.data, offset, size, hash);
+                nodes[bucket] = node;
+                return node.aggr;
+            }
+            else if (keyEqualScalar(node, offset, size, hash)) {
+                return node.aggr;
+            }
+        }
+    }
+
+    void grow() {
+        var oldNodes = this.nodes;
+        var newNodes = new PoorManMapNode[oldNodes.length * 2];
+        int bucketMask = newNodes.length - 1;
+        for (var node : oldNodes) {
+            if (node == null) {
+                continue;
+            }
+            int bucket = node.hash & bucketMask;
+            for (; newNodes[bucket] != null; bucket = (bucket + 1) & bucketMask) {
+            }
+            newNodes[bucket] = node;
+        }
+        this.nodes = newNodes;
+    }
+
+    static int rehash(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = (x >>> 16) ^ x;
+        return x;
+    }
+
+    // The hash merykitty feeds into indexSimple: the first four bytes of the key, or its first byte if shorter.
+    static int hash(MemorySegment data, long offset, long size) {
+        if (size >= Integer.BYTES) {
+            return data.get(ValueLayout.JAVA_INT_UNALIGNED, offset);
+        }
+        return data.get(ValueLayout.JAVA_BYTE, offset);
+    }
+
+    private boolean keyEqualScalar(PoorManMapNode node, long offset, long size, int hash) {
+        if (node.hash != hash || node.size != size) {
+            return false;
+        }
+
+        // Be simple
+        for (int i = 0; i < size; i++) {
+            int c1 = node.data[BYTE_SPECIES.vectorByteSize() + i];
+            int c2 = data.get(ValueLayout.JAVA_BYTE, offset + i);
+            if (c1 != c2) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
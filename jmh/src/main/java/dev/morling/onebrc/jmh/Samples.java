@@ -0,0 +1,185 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.jmh;
+
+import dev.morling.onebrc.CreateMeasurements;
+import dev.morling.onebrc.CreateMeasurements3;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Benchmark inputs. A shape is either the name of a file in {@code src/test/resources/samples} (without extension),
+ * whose lines are repeated in random order, {@link #KEYSET_413}, which draws from the 413 stations of
+ * {@link CreateMeasurements}, or {@link #KEYSET_10K}, which draws from the 10,000 stations of
+ * {@link CreateMeasurements3}. {@code create-measurements3:<distribution>} draws from those stations with one of the
+ * distributions of {@link CreateMeasurements3#distribution}, e.g. {@link #KEYSET_10K_ZIPF}. Inputs are built from a
+ * fixed seed so all kernels see the same bytes.
+ */
+public final class Samples {
+
+    public static final String KEYSET_413 = "create-measurements";
+    public static final String KEYSET_10K = "create-measurements3";
+    public static final String KEYSET_10K_ZIPF = KEYSET_10K + ":zipf";
+    public static final String KEYSET_10K_HOTSPOT = KEYSET_10K + ":hotspot";
+    public static final String KEYSET_10K_ADVERSARIAL = KEYSET_10K + ":adversarial";
+
+    // Size of the generated input, large enough to leave the L2 cache but quick to set up.
+    public static final int INPUT_SIZE = 8 * 1024 * 1024;
+
+    // Zeroed bytes after the last line, so that word and vector loads near the end stay in bounds.
+    public static final int PADDING = 128;
+
+    private static final long SEED = 42;
+
+    private Samples() {
+    }
+
+    /**
+     * A line-aligned input of {@code length} bytes followed by {@link #PADDING} zero bytes, together with the
+     * position of every line, name and value in it.
+     */
+    public record Input(MemorySegment data, long length, int lines, int[] nameOffsets, int[] nameLengths,
+                        int[] valueOffsets, int[] values) {
+
+        public long address() {
+            return data.address();
+        }
+
+        public byte[] name(int line) {
+            byte[] name = new byte[nameLengths[line]];
+            MemorySegment.copy(data, ValueLayout.JAVA_BYTE, nameOffsets[line], name, 0, name.length);
+            return name;
+        }
+
+        public List<byte[]> distinctNames() {
+            var names = new LinkedHashSet<String>();
+            for (int i = 0; i < lines; i++) {
+                names.add(new String(name(i), StandardCharsets.UTF_8));
+            }
+            var result = new ArrayList<byte[]>(names.size());
+            for (String name : names) {
+                result.add(name.getBytes(StandardCharsets.UTF_8));
+            }
+            return result;
+        }
+    }
+
+    public static Input load(String shape, Arena arena) throws IOException {
+        var rnd = new Random(SEED);
+        Supplier<String> lines;
+        if (shape.equals(KEYSET_413)) {
+            lines = keyset413(rnd);
+        }
+        else if (shape.equals(KEYSET_10K)) {
+            lines = keyset10k(rnd, "uniform");
+        }
+        else if (shape.startsWith(KEYSET_10K + ":")) {
+            lines = keyset10k(rnd, shape.substring(KEYSET_10K.length() + 1));
+        }
+        else {
+            lines = sample(shape, rnd);
+        }
+
+        var data = arena.allocate(INPUT_SIZE + PADDING, 64);
+        long length = 0;
+        while (true) {
+            byte[] line = (lines.get() + "\n").getBytes(StandardCharsets.UTF_8);
+            if (length + line.length > INPUT_SIZE) {
+                break;
+            }
+            MemorySegment.copy(line, 0, data, ValueLayout.JAVA_BYTE, length, line.length);
+            length += line.length;
+        }
+        return index(data, length);
+    }
+
+    private static Supplier<String> sample(String shape, Random rnd) throws IOException {
+        List<String> lines = Files.readAllLines(Path.of("src/test/resources/samples", shape + ".txt"));
+        return () -> lines.get(rnd.nextInt(lines.size()));
+    }
+
+    private static Supplier<String> keyset413(Random rnd) {
+        List<CreateMeasurements.WeatherStation> stations = CreateMeasurements.STATIONS;
+        return () -> {
+            var station = stations.get(rnd.nextInt(stations.size()));
+            double temp = rnd.nextGaussian(station.meanTemperature(), 10);
+            return station.id() + ";" + Math.round(temp * 10.0) / 10.0;
+        };
+    }
+
+    private static Supplier<String> keyset10k(Random rnd, String distributionSpec) throws IOException {
+        CreateMeasurements3.Distribution distribution;
+        try {
+            distribution = CreateMeasurements3.distribution(distributionSpec, rnd);
+        }
+        catch (Exception e) {
+            throw new IOException(e);
+        }
+        List<CreateMeasurements3.WeatherStation> stations = distribution.stations();
+        return () -> {
+            var station = stations.get(distribution.next(rnd));
+            double temp = rnd.nextGaussian(station.avgTemp(), 7.0);
+            return station.name() + ";" + Math.round(temp * 10.0) / 10.0;
+        };
+    }
+
+    private static Input index(MemorySegment data, long length) {
+        var nameOffsets = new ArrayList<Integer>();
+        var nameLengths = new ArrayList<Integer>();
+        var valueOffsets = new ArrayList<Integer>();
+        var values = new ArrayList<Integer>();
+        int offset = 0;
+        while (offset < length) {
+            int semicolon = offset;
+            while (data.get(ValueLayout.JAVA_BYTE, semicolon) != ';') {
+                semicolon++;
+            }
+            int newLine = semicolon + 1;
+            int value = 0;
+            boolean negative = false;
+            for (byte b; (b = data.get(ValueLayout.JAVA_BYTE, newLine)) != '\n'; newLine++) {
+                if (b == '-') {
+                    negative = true;
+                }
+                else if (b != '.') {
+                    value = value * 10 + (b - '0');
+                }
+            }
+            nameOffsets.add(offset);
+            nameLengths.add(semicolon - offset);
+            valueOffsets.add(semicolon + 1);
+            values.add(negative ? -value : value);
+            offset = newLine + 1;
+        }
+        return new Input(data, length, nameOffsets.size(), toArray(nameOffsets), toArray(nameLengths),
+                toArray(valueOffsets), toArray(values));
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
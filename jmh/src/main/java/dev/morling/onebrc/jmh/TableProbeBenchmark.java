@@ -0,0 +1,174 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.jmh;
+
+import dev.morling.onebrc.CalculateAverage_richardstartin;
+import dev.morling.onebrc.core.OffHeapStationTable;
+import dev.morling.onebrc.core.StationTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up the entry of every line's station and accumulating its value. Hashes are computed once up front with
+ * each table's own hash function, so only probing, key comparison and the update are measured. Tables are created
+ * per iteration: the first operation inserts all stations, the remaining ones measure the steady-state hit path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--enable-preview", "--add-modules", "jdk.incubator.vector" })
+public class TableProbeBenchmark {
+
+    @State(Scope.Thread)
+    public static class Tables {
+        int[] poorManMapHashes;
+        int[] aggregatesHashes;
+        int[] dictionaryHashes;
+        int[] stationTableHashes;
+        ByteBuffer[] slices;
+
+        PoorManMap poorManMap;
+        Aggregates aggregates;
+        Aggregates.Row row;
+        CalculateAverage_richardstartin.Dictionary dictionary;
+        StationTable stationTable;
+        OffHeapStationTable offHeapStationTable;
+
+        @Setup(Level.Trial)
+        public void hashes(InputState state) {
+            Samples.Input input = state.input;
+            ByteBuffer buffer = input.data().asByteBuffer();
+            poorManMapHashes = new int[input.lines()];
+            aggregatesHashes = new int[input.lines()];
+            dictionaryHashes = new int[input.lines()];
+            stationTableHashes = new int[input.lines()];
+            slices = new ByteBuffer[input.lines()];
+            for (int i = 0; i < input.lines(); i++) {
+                byte[] name = input.name(i);
+                poorManMapHashes[i] = PoorManMap.hash(input.data(), input.nameOffsets()[i], name.length);
+                aggregatesHashes[i] = Aggregates.hash(name, name.length);
+                slices[i] = buffer.slice(input.nameOffsets()[i], name.length).order(ByteOrder.LITTLE_ENDIAN);
+                dictionaryHashes[i] = slices[i].hashCode();
+                stationTableHashes[i] = StationTable.hash(name);
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void tables(InputState state) {
+            poorManMap = new PoorManMap(state.input.data());
+            aggregates = new Aggregates();
+            row = new Aggregates.Row();
+            dictionary = new CalculateAverage_richardstartin.Dictionary();
+            stationTable = new StationTable();
+            offHeapStationTable = new OffHeapStationTable();
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() {
+            offHeapStationTable.close();
+        }
+    }
+
+    @Benchmark
+    public long merykittyPoorManMapIndexSimple(InputState state, Tables tables) {
+        Samples.Input input = state.input;
+        int[] nameOffsets = input.nameOffsets();
+        int[] nameLengths = input.nameLengths();
+        int[] values = input.values();
+        for (int i = 0; i < input.lines(); i++) {
+            var aggr = tables.poorManMap.indexSimple(nameOffsets[i], nameLengths[i], tables.poorManMapHashes[i]);
+            aggr.min = Math.min(values[i], aggr.min);
+            aggr.max = Math.max(values[i], aggr.max);
+            aggr.sum += values[i];
+            aggr.count++;
+        }
+        return tables.poorManMap.size;
+    }
+
+    // Includes copying the name into the Row, which Aggregates.add compares against.
+    @Benchmark
+    public long artsiomkorzunAggregatesAdd(InputState state, Tables tables) {
+        Samples.Input input = state.input;
+        MemorySegment data = input.data();
+        int[] nameOffsets = input.nameOffsets();
+        int[] nameLengths = input.nameLengths();
+        int[] values = input.values();
+        Aggregates.Row row = tables.row;
+        for (int i = 0; i < input.lines(); i++) {
+            MemorySegment.copy(data, ValueLayout.JAVA_BYTE, nameOffsets[i], row.station, 0, nameLengths[i]);
+            row.length = nameLengths[i];
+            row.hash = tables.aggregatesHashes[i];
+            row.temperature = values[i];
+            tables.aggregates.add(row);
+        }
+        return tables.aggregates.size();
+    }
+
+    @Benchmark
+    public long richardstartinDictionaryEncode(InputState state, Tables tables) {
+        Samples.Input input = state.input;
+        int[] values = input.values();
+        long total = 0;
+        for (int i = 0; i < input.lines(); i++) {
+            total += tables.dictionary.encode(tables.dictionaryHashes[i], tables.slices[i]) + values[i];
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long engineStationTableFind(InputState state, Tables tables) {
+        Samples.Input input = state.input;
+        long address = input.address();
+        int[] nameOffsets = input.nameOffsets();
+        int[] nameLengths = input.nameLengths();
+        int[] values = input.values();
+        for (int i = 0; i < input.lines(); i++) {
+            tables.stationTable.find(address + nameOffsets[i], nameLengths[i], tables.stationTableHashes[i]).add(values[i]);
+        }
+        return tables.stationTable.size();
+    }
+
+    @Benchmark
+    public long engineOffHeapStationTableAdd(InputState state, Tables tables) {
+        Samples.Input input = state.input;
+        long address = input.address();
+        int[] nameOffsets = input.nameOffsets();
+        int[] nameLengths = input.nameLengths();
+        int[] values = input.values();
+        for (int i = 0; i < input.lines(); i++) {
+            tables.offHeapStationTable.add(address + nameOffsets[i], nameLengths[i], tables.stationTableHashes[i], values[i]);
+        }
+        return tables.offHeapStationTable.size();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static dev.morling.onebrc.jmh.UnsafeAccess.UNSAFE;
+
+/**
+ * Parsing the temperature of every line, given the offset of its first character. Each operation parses all values
+ * of the input and returns their sum in tenths of a degree.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--enable-preview", "--add-modules", "jdk.incubator.vector" })
+public class TemperatureParseBenchmark {
+
+    private static final ValueLayout.OfLong JAVA_LONG_LT = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    // The sign/digit branches of CalculateAverage_thomaswue.parseLoop.
+    @Benchmark
+    public long thomaswueBranchy(InputState state) {
+        long address = state.input.address();
+        int[] valueOffsets = state.input.valueOffsets();
+        long total = 0;
+        for (int i = 0; i < state.input.lines(); i++) {
+            long scanPtr = address + valueOffsets[i];
+            int number;
+            byte b;
+            byte sign = UNSAFE.getByte(scanPtr++);
+            if (sign == '-') {
+                number = UNSAFE.getByte(scanPtr++) - '0';
+                if ((b = UNSAFE.getByte(scanPtr++)) != '.') {
+                    number = number * 10 + (b - '0');
+                    scanPtr++;
+                }
+                number = number * 10 + (UNSAFE.getByte(scanPtr) - '0');
+                number = -number;
+            }
+            else {
+                number = sign - '0';
+                if ((b = UNSAFE.getByte(scanPtr++)) != '.') {
+                    number = number * 10 + (b - '0');
+                    scanPtr++;
+                }
+                number = number * 10 + (UNSAFE.getByte(scanPtr) - '0');
+            }
+            total += number;
+        }
+        return total;
+    }
+
+    // The branchless multiply of CalculateAverage_merykitty.parseDataPoint.
+    @Benchmark
+    public long merykittySwar(InputState state) {
+        MemorySegment data = state.input.data();
+        int[] valueOffsets = state.input.valueOffsets();
+        long total = 0;
+        for (int i = 0; i < state.input.lines(); i++) {
+            long word = data.get(JAVA_LONG_LT, valueOffsets[i]);
+            int decimalSepPos = Long.numberOfTrailingZeros(~word & 0x10101000);
+            int shift = 28 - decimalSepPos;
+            long signed = (~word << 59) >> 63;
+            long designMask = ~(signed & 0xFF);
+            long digits = ((word & designMask) << shift) & 0x0F000F0F00L;
+            long absValue = ((digits * 0x640a0001) >>> 32) & 0x3FF;
+            total += (absValue ^ signed) - signed;
+        }
+        return total;
+    }
+
+    // CalculateAverage_artsiomkorzun.Aggregator.parse on a ByteBuffer view of the input.
+    @Benchmark
+    public long artsiomkorzunByteBuffer(InputState state) {
+        ByteBuffer buffer = state.input.data().asByteBuffer();
+        int[] valueOffsets = state.input.valueOffsets();
+        long total = 0;
+        for (int i = 0; i < state.input.lines(); i++) {
+            int offset = valueOffsets[i];
+            int sign = 1;
+            if (buffer.get(offset) == '-') {
+                sign = -1;
+                offset++;
+            }
+            int value = buffer.get(offset++) - '0';
+            if (buffer.get(offset) != '.') {
+                value = 10 * value + buffer.get(offset++) - '0';
+            }
+            value = 10 * value + buffer.get(offset + 1) - '0';
+            total += value * sign;
+        }
+        return total;
+    }
+
+    // Double.parseDouble on the decoded value, as in CalculateAverage, CalculateAverage2, CalculateAverage3 and
+    // CalculateAverage22.
+    @Benchmark
+    public long parseDouble(InputState state) {
+        MemorySegment data = state.input.data();
+        int[] valueOffsets = state.input.valueOffsets();
+        int[] nameOffsets = state.input.nameOffsets();
+        byte[] buffer = new byte[8];
+        long total = 0;
+        for (int i = 0; i < state.input.lines(); i++) {
+            int offset = valueOffsets[i];
+            int end = i + 1 < state.input.lines() ? nameOffsets[i + 1] - 1 : (int) state.input.length() - 1;
+            MemorySegment.copy(data, ValueLayout.JAVA_BYTE, offset, buffer, 0, end - offset);
+            total += Math.round(Double.parseDouble(new String(buffer, 0, end - offset, StandardCharsets.UTF_8)) * 10);
+        }
+        return total;
+    }
+}
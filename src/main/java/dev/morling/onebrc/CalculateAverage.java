@@ -15,6 +15,8 @@
  */
 package dev.morling.onebrc;
 
+import dev.morling.onebrc.core.Temperatures;
+
 import com.sun.source.tree.Tree;
 
 import static java.util.stream.Collectors.*;
@@ -88,7 +90,7 @@ public class CalculateAverage {
 
         Map<String, Holder> collect = new BufferedReader(new InputStreamReader(bufferedInputStream)).lines().parallel().map(s -> {
             String[] split = s.split(";");
-            double v = Double.parseDouble(split[1]);
+            double v = Temperatures.parse(split[1]) / 10.0;
             return new Holder(split[0], v, 1, v, v);
         }).collect(groupingByConcurrent(Holder::name, Collector.of(Holder::new, Holder::merge, Holder::merge)));
 
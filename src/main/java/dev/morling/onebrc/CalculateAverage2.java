@@ -15,6 +15,8 @@
  */
 package dev.morling.onebrc;
 
+import dev.morling.onebrc.core.Temperatures;
+
 import java.io.*;
 import java.nio.CharBuffer;
 import java.nio.MappedByteBuffer;
@@ -135,7 +137,7 @@ public class CalculateAverage2 {
             }
 
             String[] split = line.split(";");
-            double v = Double.parseDouble(split[1]);
+            double v = Temperatures.parse(split[1]) / 10.0;
             Holder newHolder = new Holder(split[0], v, 1, v, v);
             Holder tmp = first.get(newHolder.name);
             if (tmp != null) {
@@ -198,7 +200,7 @@ public class CalculateAverage2 {
                 String line = builder.toString();
 
                 String[] split = line.split(";");
-                double v = Double.parseDouble(split[1]);
+                double v = Temperatures.parse(split[1]) / 10.0;
 
                 Holder newHolder = new Holder(split[0], v, 1, v, v);
                 Holder tmp = resultsMap.get(split[0]);
@@ -15,13 +15,18 @@
  */
 package dev.morling.onebrc;
 
+import dev.morling.onebrc.core.ChunkBoundaries;
+import dev.morling.onebrc.core.Temperatures;
+
 import java.io.File;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -103,7 +108,7 @@ public class CalculateAverage22 {
                 }
             }
 
-            return 0;
+            return this.buff.length - o.buff.length;
         }
     }
 
@@ -153,32 +158,34 @@ public class CalculateAverage22 {
             t.join();
         }
 
-        //process remainders
+        //process the lines split between chunks
         Map<Chars, Holder> first = resultMaps.get(0);
-        for (int i = 0; i < index; i++) {
-            String line = remainders[i] + (startingParts[i + 1] == null ? "" : startingParts[i + 1]);
-
-            if (line.isBlank()) {
-                continue;
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        boundaries.reconcile((line, nameLength, temperature) -> {
+            char[] name;
+            try {
+                CharBuffer decoded = decoder.decode(ByteBuffer.wrap(line, 0, nameLength));
+                name = Arrays.copyOf(decoded.array(), decoded.limit());
+            } catch (CharacterCodingException e) {
+                throw new IllegalStateException(e);
             }
-
-            String[] split = line.split(";");
-            double v = Double.parseDouble(split[1]);
-            Holder newHolder = new Holder(split[0].toCharArray(), v, 1, v, v);
-            Holder tmp = first.get(newHolder.name);
+            double v = temperature / 10.0;
+            Holder newHolder = new Holder(name, v, 1, v, v);
+            Chars key = Chars.wrap(name);
+            Holder tmp = first.get(key);
             if (tmp != null) {
-                first.put(Chars.wrap(newHolder.name), tmp.merge(newHolder));
+                first.put(key, tmp.merge(newHolder));
             } else {
-                first.put(Chars.wrap(newHolder.name), newHolder);
+                first.put(key, newHolder);
             }
-        }
+        });
 
 
         ///merge all maps
 
         for (int i = 1; i < resultMaps.size(); i++) {
             for (var h : resultMaps.get(i).values()) {
-                Holder tmp = first.get(h.name);
+                Holder tmp = first.get(Chars.wrap(h.name));
                 if (tmp != null) {
                     first.put(Chars.wrap(h.name), tmp.merge(h));
                 } else {
@@ -197,37 +204,25 @@ public class CalculateAverage22 {
 
     }
 
-    static String[] remainders = new String[5000];
-    static String[] startingParts = new String[5000];
+    static final ChunkBoundaries boundaries = new ChunkBoundaries();
 
     static HashMap<Chars, Holder> processChunk(MappedByteBuffer chunk, int index) throws CharacterCodingException {
         HashMap<Chars, Holder> resultsMap = new HashMap<>();
         char[] buff = new char[128];
         int cIndex = 0;
 
-        CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(chunk);
-        if (index != 0) {
-            while (true) {
-                char c = chars.get();
-                if (c == '\n') {
-                    break;
-                }
-                buff[cIndex++] = c;
-            }
-
-            startingParts[index] = String.valueOf(buff, 0, cIndex);
-            cIndex = 0;
-        }
+        // only whole lines are decoded, the partial ones at both ends are reconciled at the end
+        CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(boundaries.lines(index, chunk));
         char[] tmpName = null;
-        do {
+        while (chars.hasRemaining()) {
             char c1 = chars.get();
             if(c1 == ';'){
                 tmpName = Arrays.copyOf(buff, cIndex);
                 cIndex = 0;
             }
             if (c1 == '\n') {
-                Chars key = Chars.wrap(Arrays.copyOfRange(buff, 1, cIndex));
-                double v = Double.parseDouble(new String(key.buff));
+                Chars key = Chars.wrap(tmpName);
+                double v = Temperatures.parse(buff, 1, cIndex - 1) / 10.0;
 
                 Holder newHolder = new Holder(tmpName, v, 1, v, v);
                 Holder tmp = resultsMap.get(key);
@@ -241,9 +236,7 @@ public class CalculateAverage22 {
                 continue;
             }
             buff[cIndex++] = c1;
-        }while (chars.hasRemaining());
-
-        remainders[index] = new String(Arrays.copyOf(buff, cIndex));
+        }
 
         return resultsMap;
     }
@@ -15,7 +15,11 @@
  */
 package dev.morling.onebrc;
 
+import dev.morling.onebrc.core.ChunkBoundaries;
+import dev.morling.onebrc.core.Temperatures;
+
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
@@ -78,30 +82,22 @@ public class CalculateAverage3 {
         long testStart = System.currentTimeMillis();
         FileInputStream fileStream = new FileInputStream(FILE);
         long fileSize = fileStream.getChannel().size();
-        InputStreamReader inputStreamReader = new InputStreamReader(new BufferedInputStream(fileStream));
 
 
         List<Map<String, Holder>> resultMaps = Collections.synchronizedList(new ArrayList<>(32));
         LinkedList<Thread> threads = new LinkedList<>();
 
-        long read = 0;
+        // read whole bytes rather than chars, so that the chunks can be cut anywhere, even within a character
         int index = 0;
-        for (; index < fileSize / BUFFER_SIZE - 1; index++) {
-            long positionStart = (long) index * BUFFER_SIZE;
-            long sizeToRead = fileSize - ((long) index) * BUFFER_SIZE;
-            sizeToRead = Math.min(BUFFER_SIZE, sizeToRead);
-
-            char[] bytes = new char[(int) sizeToRead];
-            int bytesRead = inputStreamReader.read(bytes);
-            if (bytesRead < 1) {
-                System.out.println("Failed to read bytes for chunk " + index);
-                continue;
-            }
-
-            final int indexToProcess = index;
+        byte[] bytes;
+        while ((bytes = fileStream.readNBytes(BUFFER_SIZE)).length > 0) {
+            final byte[] chunk = bytes;
+            final int indexToProcess = index++;
             threads.add(Thread.startVirtualThread(() -> {
                 try {
-                    HashMap<String, Holder> r = processChunk(bytes, indexToProcess);
+                    // only whole lines are decoded, the partial ones at both ends are reconciled at the end
+                    CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(boundaries.lines(indexToProcess, ByteBuffer.wrap(chunk)));
+                    HashMap<String, Holder> r = processChunk(chars.array(), chars.limit());
                     resultMaps.add(r);
                 } catch (CharacterCodingException e) {
                     throw new RuntimeException(e);
@@ -114,7 +110,7 @@ public class CalculateAverage3 {
                     t.join();
                 }
                 threads.clear();
-                System.out.println("Processed chunks: " + (index + 1) + " of " + (fileSize / BUFFER_SIZE + 1));
+                System.out.println("Processed chunks: " + index + " of " + Math.ceilDiv(fileSize, BUFFER_SIZE));
             }
         }
 
@@ -133,25 +129,18 @@ public class CalculateAverage3 {
 //            }
 
 
-        //process remainders
-        Map<String, Holder> first = resultMaps.get(0);
-        for (int i = 0; i < index - 1; i++) {
-            String line = remainders[i] + (startingParts[i + 1] == null ? "" : startingParts[i + 1]);
-
-            if (line.isBlank()) {
-                continue;
-            }
-
-            String[] split = line.split(";");
-            double v = Double.parseDouble(split[1]);
-            Holder newHolder = new Holder(split[0], v, 1, v, v);
+        //process the lines split between chunks
+        Map<String, Holder> first = resultMaps.isEmpty() ? new HashMap<>() : resultMaps.get(0);
+        boundaries.reconcile((line, nameLength, temperature) -> {
+            double v = temperature / 10.0;
+            Holder newHolder = new Holder(new String(line, 0, nameLength, StandardCharsets.UTF_8), v, 1, v, v);
             Holder tmp = first.get(newHolder.name);
             if (tmp != null) {
                 first.put(newHolder.name, tmp.merge(newHolder));
             } else {
                 first.put(newHolder.name, newHolder);
             }
-        }
+        });
 
         System.out.println((System.currentTimeMillis() - testStart) + " ms - finished the file processing");
 
@@ -180,33 +169,18 @@ public class CalculateAverage3 {
         System.out.println((System.currentTimeMillis() - testStart) + " ms finished");
     }
 
-    static String[] remainders = new String[5000];
-    static String[] startingParts = new String[5000];
+    static final ChunkBoundaries boundaries = new ChunkBoundaries();
 
-    static HashMap<String, Holder> processChunk(char[] chunk, int index) throws CharacterCodingException {
+    static HashMap<String, Holder> processChunk(char[] chunk, int length) throws CharacterCodingException {
         HashMap<String, Holder> resultsMap = new HashMap<>();
         StringBuilder builder = new StringBuilder(512);
-        int charI = 0;
-        if (index != 0) {
-            for (; charI < chunk.length; charI++) {
-                char c = chunk[charI];
-                if (c == '\n') {
-                    charI += 1;
-                    break;
-                }
-                builder.append(c);
-            }
-
-            startingParts[index] = builder.toString();
-            builder = new StringBuilder(512);
-        }
-        for (; charI < chunk.length; charI++) {
+        for (int charI = 0; charI < length; charI++) {
             char c1 = chunk[charI];
             if (c1 == '\n') {
                 String line = builder.toString();
 
                 String[] split = line.split(";");
-                double v = Double.parseDouble(split[1]);
+                double v = Temperatures.parse(split[1]) / 10.0;
 
                 Holder newHolder = new Holder(split[0], v, 1, v, v);
                 Holder tmp = resultsMap.get(split[0]);
@@ -223,8 +197,6 @@ public class CalculateAverage3 {
 
         }
 
-        remainders[index] = builder.toString();
-
         return resultsMap;
     }
 }
@@ -0,0 +1,229 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc;
+
+import dev.morling.onebrc.core.Temperatures;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Allocation-free variant of {@link CalculateAverage3}: the {@code Holder}s keep their merge semantics but hold
+ * primitive fields in tenths of a degree, lines are parsed straight from the bytes of a {@link MappedByteBuffer}
+ * without decoding them to chars, and the only allocations while parsing are the name and {@code Holder} of each
+ * station a thread sees for the first time.
+ * <p>
+ * The file is split into chunks of {@value #CHUNK_SIZE} bytes, each mapped with an overlap of one line into the next
+ * one, so that every line is parsed by the chunk its first byte is in and no remainders have to be stitched together.
+ * One virtual thread per available processor takes chunks from a shared counter into its own table; the tables are
+ * merged at the end.
+ */
+public class CalculateAverage4 {
+
+    private static final String FILE = "./measurements.txt";
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int CHUNK_SIZE = 32 * 1024 * 1024;
+
+    // A name of at most 100 bytes, ";-99.9\n", and the byte before the chunk.
+    private static final int MAX_LINE_LENGTH = 128;
+
+    // Open addressing with a low load factor for the at most 10,000 stations.
+    private static final int TABLE_SIZE = 1 << 15;
+
+    private static final long SEMICOLONS = 0x3B3B3B3B3B3B3B3BL;
+
+    static class Holder {
+        final byte[] name;
+        // The name as read by the ';' scan, in little-endian words with the bytes after it cleared.
+        final long[] words;
+        long value;
+        long count;
+        short max;
+        short min;
+
+        Holder(byte[] name, long[] words) {
+            this.name = name;
+            this.words = words;
+            this.max = Short.MIN_VALUE;
+            this.min = Short.MAX_VALUE;
+        }
+
+        // Accumulate a single measurement given in tenths of a degree.
+        void add(int measurement) {
+            value += measurement;
+            count++;
+            if (measurement > max) {
+                max = (short) measurement;
+            }
+            if (measurement < min) {
+                min = (short) measurement;
+            }
+        }
+
+        Holder merge(Holder holder2) {
+            this.count += holder2.count;
+            if (holder2.max > this.max) {
+                this.max = holder2.max;
+            }
+            if (holder2.min < this.min) {
+                this.min = holder2.min;
+            }
+            this.value += holder2.value;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return new String(name, StandardCharsets.UTF_8) + "=" + round(min / 10.0) + "/" + round(value / 10.0 / count) + "/" + round(max / 10.0);
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 10.0) / 10.0;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        try (RandomAccessFile file = new RandomAccessFile(FILE, "r"); FileChannel channel = file.getChannel()) {
+            long fileSize = channel.size();
+            int chunks = (int) Math.max(1, Math.ceilDiv(fileSize, CHUNK_SIZE));
+            AtomicInteger nextChunk = new AtomicInteger();
+            List<Holder[]> tables = new ArrayList<>(THREADS);
+            List<Thread> threads = new ArrayList<>(THREADS);
+            Throwable[] failure = new Throwable[1];
+            for (int t = 0; t < THREADS; t++) {
+                Holder[] table = new Holder[TABLE_SIZE];
+                tables.add(table);
+                threads.add(Thread.startVirtualThread(() -> {
+                    try {
+                        long[] words = new long[MAX_LINE_LENGTH / Long.BYTES];
+                        int chunk;
+                        while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                            processChunk(channel, fileSize, chunk, table, words);
+                        }
+                    }
+                    catch (Throwable e) {
+                        failure[0] = e;
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            if (failure[0] != null) {
+                throw new IllegalStateException("Failed to process " + FILE, failure[0]);
+            }
+
+            // Merge all tables.
+            Map<String, Holder> result = new TreeMap<>();
+            for (Holder[] table : tables) {
+                for (Holder holder : table) {
+                    if (holder != null) {
+                        result.merge(new String(holder.name, StandardCharsets.UTF_8), holder, Holder::merge);
+                    }
+                }
+            }
+            System.out.println(result.values().stream().map(Holder::toString).collect(Collectors.joining(", ", "{", "}")));
+        }
+    }
+
+    // The 8 bytes at position in little-endian order, zero-extended at the end of the buffer.
+    private static long word(MappedByteBuffer buffer, int position, int limit) {
+        if (position + Long.BYTES <= limit) {
+            return buffer.getLong(position);
+        }
+        long word = 0;
+        for (int i = 0; position + i < limit; i++) {
+            word |= (buffer.get(position + i) & 0xFFL) << (i << 3);
+        }
+        return word;
+    }
+
+    static void processChunk(FileChannel channel, long fileSize, int chunk, Holder[] table, long[] words) throws IOException {
+        long chunkStart = (long) chunk * CHUNK_SIZE;
+        long chunkEnd = Math.min(chunkStart + CHUNK_SIZE, fileSize);
+        // Start one byte early to see whether the first line begins right at the chunk start.
+        long mapStart = chunk == 0 ? 0 : chunkStart - 1;
+        long mapEnd = Math.min(chunkEnd + MAX_LINE_LENGTH, fileSize);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int limit = buffer.limit();
+        int end = (int) (chunkEnd - mapStart);
+
+        // Skip the line started in the previous chunk.
+        int position = 0;
+        if (chunk != 0) {
+            while (buffer.get(position) != '\n') {
+                position++;
+            }
+            position++;
+        }
+
+        while (position < end) {
+            // Scan for ';' 8 bytes at a time, keeping and hashing the words of the name on the way.
+            int nameStart = position;
+            int wordCount = 0;
+            long hash = 0;
+            while (true) {
+                long word = word(buffer, position, limit);
+                long match = word ^ SEMICOLONS;
+                match = (match - 0x0101010101010101L) & ~match & 0x8080808080808080L;
+                if (match != 0) {
+                    int bits = Long.numberOfTrailingZeros(match);
+                    // The bytes before the ';', zero if it is the first one.
+                    long tail = bits == 7 ? 0 : word & (-1L >>> (64 - (bits - 7)));
+                    words[wordCount++] = tail;
+                    hash = (hash ^ tail) * 0x9E3779B97F4A7C15L;
+                    position += bits >>> 3;
+                    break;
+                }
+                words[wordCount++] = word;
+                hash = (hash ^ word) * 0x9E3779B97F4A7C15L;
+                position += Long.BYTES;
+            }
+            int length = position - nameStart;
+            position++;
+
+            long word = word(buffer, position, limit);
+            int measurement = Temperatures.parse(word);
+            position += Temperatures.length(word) + 1;
+
+            int slot = (int) (hash >>> 32) & (TABLE_SIZE - 1);
+            Holder holder;
+            while ((holder = table[slot]) != null
+                    && (holder.name.length != length || !Arrays.equals(holder.words, 0, holder.words.length, words, 0, wordCount))) {
+                slot = (slot + 1) & (TABLE_SIZE - 1);
+            }
+            if (holder == null) {
+                byte[] name = new byte[length];
+                buffer.get(nameStart, name);
+                holder = new Holder(name, Arrays.copyOf(words, wordCount));
+                table[slot] = holder;
+            }
+            holder.add(measurement);
+        }
+    }
+}
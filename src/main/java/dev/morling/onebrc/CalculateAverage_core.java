@@ -0,0 +1,261 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc;
+
+import dev.morling.onebrc.core.AggregationServer;
+import dev.morling.onebrc.core.Aggregator;
+import dev.morling.onebrc.core.ColumnarFile;
+import dev.morling.onebrc.core.Histogram;
+import dev.morling.onebrc.core.InputFiles;
+import dev.morling.onebrc.core.Instrumentation;
+import dev.morling.onebrc.core.LineTokenizer;
+import dev.morling.onebrc.core.Mapping;
+import dev.morling.onebrc.core.NumaTopology;
+import dev.morling.onebrc.core.ReadPipeline;
+import dev.morling.onebrc.core.ResultWriter;
+import dev.morling.onebrc.core.Scheduling;
+import dev.morling.onebrc.core.StationTable;
+import dev.morling.onebrc.core.Stats;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Command line entry point for the shared engine in {@link dev.morling.onebrc.core}.
+ *
+ * Usage: {@code CalculateAverage_core [options] [input...]}, the input defaulting to {@code ./measurements.txt}. Each
+ * input is a file, a directory or a glob pattern (see {@link InputFiles}); all files are aggregated into one result.
+ * An input of {@code -} reads the measurements from standard input instead, e.g. {@code zcat measurements.txt.gz |
+ * calculate_average_core.sh -}.
+ * The options reading a single file ({@code --checkpoint}, {@code --to-columnar} and {@code --connect}) take exactly
+ * one input.
+ * <ul>
+ * <li>{@code --threads=<n>}: number of workers, defaults to the available processors</li>
+ * <li>{@code --scheduling=static|fixed|adaptive}: segment scheduling, defaults to adaptive</li>
+ * <li>{@code --mapping=plain|advised|prefault}: how the input is memory mapped, see {@link Mapping}, defaults to
+ * plain</li>
+ * <li>{@code --read[=<queue depth>]}: read the input with positional reads into a ring of direct buffers instead of
+ * mapping it, with the given number of reads in flight, see {@link ReadPipeline}</li>
+ * <li>{@code --direct}: like {@code --read}, bypassing the page cache with {@code O_DIRECT} where supported</li>
+ * <li>{@code --tokenize[=vectorized|swar]}: tokenize the lines a batch at a time before accumulating them, with
+ * vectors if the CPU has wide enough ones unless given, see {@link Aggregator.Builder#tokenizer}</li>
+ * <li>{@code --worker-stats}: print per-worker busy/idle times to stderr</li>
+ * <li>{@code --numa}: pin the workers to the NUMA nodes of the machine, each node parsing its own range of the
+ * input, see {@link Aggregator.Builder#numa}</li>
+ * <li>{@code --instrument}: print a JSON report of input size, line count, phase durations, per-worker timings and
+ * table probe statistics to stderr, see {@link Instrumentation}</li>
+ * <li>{@code --percentiles[=compact]}: also print p50/p95/p99 per station, as {@code min/mean/max/p50/p95/p99};
+ * {@code compact} halves the histogram memory for inputs with many stations, see {@link Histogram.Mode}</li>
+ * <li>{@code --checkpoint=<file>}: incremental mode for append-only input, only the bytes added since the previous
+ * run with the same checkpoint file are parsed</li>
+ * <li>{@code --to-columnar=<file>}: convert the input into a columnar cache file and exit</li>
+ * <li>{@code --columnar=<file>}: aggregate from a columnar cache file instead of the text input</li>
+ * <li>{@code --station=<name>}: with {@code --columnar} or {@code --connect}, only aggregate the given station</li>
+ * <li>{@code --serve=<socket>}: keep running and serve aggregation requests on the given Unix domain socket, see
+ * {@link AggregationServer}</li>
+ * <li>{@code --connect=<socket>}: send the file to a server started with {@code --serve} instead of aggregating it in
+ * this process</li>
+ * </ul>
+ */
+public class CalculateAverage_core {
+    private static final String FILE = "./measurements.txt";
+
+    public static void main(String[] args) throws IOException {
+        Aggregator.Builder builder = Aggregator.builder();
+        List<String> inputs = new ArrayList<>();
+        Path checkpoint = null;
+        Path toColumnar = null;
+        Path columnar = null;
+        String station = null;
+        Path serve = null;
+        Path connect = null;
+        Instrumentation instrumentation = null;
+        boolean percentiles = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queueDepth = 0;
+        boolean direct = false;
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(value(arg));
+                builder.threads(threads);
+            }
+            else if (arg.startsWith("--scheduling=")) {
+                builder.scheduling(Scheduling.valueOf(value(arg).toUpperCase(Locale.ROOT)));
+            }
+            else if (arg.startsWith("--mapping=")) {
+                builder.mapping(Mapping.valueOf(value(arg).toUpperCase(Locale.ROOT)));
+            }
+            else if (arg.equals("--read") || arg.startsWith("--read=")) {
+                queueDepth = arg.equals("--read") ? ReadPipeline.DEFAULT_QUEUE_DEPTH : Integer.parseInt(value(arg));
+            }
+            else if (arg.equals("--direct")) {
+                direct = true;
+            }
+            else if (arg.equals("--tokenize")) {
+                builder.tokenizer(LineTokenizer.create());
+            }
+            else if (arg.equals("--tokenize=vectorized")) {
+                builder.tokenizer(LineTokenizer.vectorized());
+            }
+            else if (arg.equals("--tokenize=swar")) {
+                builder.tokenizer(LineTokenizer.swar());
+            }
+            else if (arg.equals("--worker-stats")) {
+                builder.workerStats(stats -> stats.forEach(System.err::println));
+            }
+            else if (arg.equals("--numa")) {
+                builder.numa(NumaTopology.detect());
+            }
+            else if (arg.equals("--instrument")) {
+                instrumentation = new Instrumentation();
+                builder.instrumentation(instrumentation);
+            }
+            else if (arg.equals("--percentiles") || arg.equals("--percentiles=compact")) {
+                percentiles = true;
+                builder.histograms(arg.endsWith("compact") ? Histogram.Mode.COMPACT : Histogram.Mode.FULL);
+            }
+            else if (arg.startsWith("--checkpoint=")) {
+                checkpoint = Path.of(value(arg));
+            }
+            else if (arg.startsWith("--to-columnar=")) {
+                toColumnar = Path.of(value(arg));
+            }
+            else if (arg.startsWith("--columnar=")) {
+                columnar = Path.of(value(arg));
+            }
+            else if (arg.startsWith("--station=")) {
+                station = value(arg);
+            }
+            else if (arg.startsWith("--serve=")) {
+                serve = Path.of(value(arg));
+            }
+            else if (arg.startsWith("--connect=")) {
+                connect = Path.of(value(arg));
+            }
+            else if (arg.startsWith("--")) {
+                System.err.println("Unknown option: " + arg);
+                System.exit(1);
+            }
+            else {
+                inputs.add(arg);
+            }
+        }
+        if (queueDepth > 0 || direct) {
+            builder.reads(new ReadPipeline(queueDepth > 0 ? queueDepth : ReadPipeline.DEFAULT_QUEUE_DEPTH, ReadPipeline.DEFAULT_BUFFER_SIZE, direct));
+        }
+        if (inputs.isEmpty()) {
+            inputs.add(FILE);
+        }
+        if ((connect != null || toColumnar != null || checkpoint != null) && inputs.size() != 1) {
+            System.err.println("Exactly one input file expected");
+            System.exit(1);
+        }
+        String file = inputs.get(0);
+        if (connect != null) {
+            if (!AggregationServer.request(connect, Path.of(file).toAbsolutePath().toString(), station, System.out)) {
+                System.exit(1);
+            }
+            return;
+        }
+        if (toColumnar != null) {
+            ColumnarFile.convert(Path.of(file), toColumnar, threads);
+            return;
+        }
+        if (columnar != null) {
+            try (ColumnarFile columnarFile = ColumnarFile.open(columnar)) {
+                if (station != null) {
+                    // Like an empty aggregation, and the server's answer for a station it does not know.
+                    Stats stats = columnarFile.aggregate(station);
+                    System.out.println(stats == null ? "{}" : "{" + station + "=" + stats + "}");
+                }
+                else {
+                    System.out.println(columnarFile.aggregate(threads));
+                }
+            }
+            return;
+        }
+
+        Aggregator aggregator = builder.build();
+        if (serve != null) {
+            AggregationServer server = new AggregationServer(aggregator, serve, System.err);
+            // The hook is the only owner of the server: it stops serve() on Ctrl+C and removes the socket file on any exit.
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.close();
+                }
+                catch (IOException e) {
+                    // ignore, exiting anyway
+                }
+            }));
+            server.serve();
+            return;
+        }
+        long begin;
+        if (checkpoint == null && !percentiles && !inputs.equals(List.of("-"))) {
+            StationTable table = aggregator.aggregateTable(resolve(inputs));
+            begin = System.nanoTime();
+            // Not closed, that would close the process' standard output.
+            ResultWriter.write(table, new FileOutputStream(FileDescriptor.out).getChannel());
+        }
+        else {
+            Map<String, Stats> result;
+            if (checkpoint != null) {
+                result = aggregator.aggregateIncremental(Path.of(file), checkpoint);
+            }
+            else if (inputs.equals(List.of("-"))) {
+                try (var stdin = new FileInputStream(FileDescriptor.in)) {
+                    result = aggregator.aggregate(stdin.getChannel());
+                }
+            }
+            else {
+                result = aggregator.aggregate(resolve(inputs));
+            }
+            begin = System.nanoTime();
+            System.out.println(percentiles ? withPercentiles(result) : result);
+        }
+        if (instrumentation != null) {
+            instrumentation.phase("print", System.nanoTime() - begin);
+            System.err.println(instrumentation.toJson());
+        }
+    }
+
+    private static String withPercentiles(Map<String, Stats> result) {
+        StringJoiner joiner = new StringJoiner(", ", "{", "}");
+        result.forEach((name, stats) -> joiner.add(name + "=" + stats + "/" + stats.percentile(50) + "/" + stats.percentile(95) + "/"
+                + stats.percentile(99)));
+        return joiner.toString();
+    }
+
+    private static List<Path> resolve(List<String> inputs) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String input : inputs) {
+            files.addAll(InputFiles.resolve(input));
+        }
+        return files;
+    }
+
+    private static String value(String arg) {
+        return arg.substring(arg.indexOf('=') + 1);
+    }
+}
@@ -25,31 +25,13 @@ public class CreateMeasurements {
 
     private static final Path MEASUREMENT_FILE = Path.of("./measurements.txt");
 
-    private record WeatherStation(String id, double meanTemperature) {
+    public record WeatherStation(String id, double meanTemperature) {
         double measurement() {
             double m = ThreadLocalRandom.current().nextGaussian(meanTemperature, 10);
             return Math.round(m * 10.0) / 10.0;
         }
     }
 
-    public static void main(String[] args) throws Exception {
-        long start = System.currentTimeMillis();
-
-        if (args.length != 1) {
-            System.out.println("Usage: create_measurements.sh <number of records to create>");
-            System.exit(1);
-        }
-
-        int size = 0;
-        try {
-            size = Integer.parseInt(args[0]);
-        }
-        catch (NumberFormatException e) {
-            System.out.println("Invalid value for <number of records to create>");
-            System.out.println("Usage: CreateMeasurements <number of records to create>");
-            System.exit(1);
-        }
-
         // @formatter:off
         // data from https://en.wikipedia.org/wiki/List_of_cities_by_average_temperature;
         // converted using https://wikitable2csv.ggor.de/
@@ -73,8 +55,7 @@ public class CreateMeasurements {
         //         from read_csv_auto('List_of_cities_by_average_temperature_5.csv', header = true)
         //         )
         // ) TO 'output.csv' (HEADER, DELIMITER ',');
-        // @formatter:on
-        List<WeatherStation> stations = List.of(
+        public static final List<WeatherStation> STATIONS = List.of(
                 new WeatherStation("Abha", 18.0),
                 new WeatherStation("Abidjan", 26.0),
                 new WeatherStation("Abéché", 29.4),
@@ -488,13 +469,32 @@ public class CreateMeasurements {
                 new WeatherStation("Zagreb", 10.7),
                 new WeatherStation("Zanzibar City", 26.0),
                 new WeatherStation("Zürich", 9.3));
+        // @formatter:on
+
+    public static void main(String[] args) throws Exception {
+        long start = System.currentTimeMillis();
+
+        if (args.length != 1) {
+            System.out.println("Usage: create_measurements.sh <number of records to create>");
+            System.exit(1);
+        }
+
+        int size = 0;
+        try {
+            size = Integer.parseInt(args[0]);
+        }
+        catch (NumberFormatException e) {
+            System.out.println("Invalid value for <number of records to create>");
+            System.out.println("Usage: CreateMeasurements <number of records to create>");
+            System.exit(1);
+        }
 
         try (BufferedWriter bw = Files.newBufferedWriter(MEASUREMENT_FILE)) {
             for (int i = 0; i < size; i++) {
                 if (i > 0 && i % 50_000_000 == 0) {
                     System.out.printf("Wrote %,d measurements in %s ms%n", i, System.currentTimeMillis() - start);
                 }
-                WeatherStation station = stations.get(ThreadLocalRandom.current().nextInt(stations.size()));
+                WeatherStation station = STATIONS.get(ThreadLocalRandom.current().nextInt(STATIONS.size()));
                 bw.write(station.id());
                 bw.write(";" + station.measurement());
                 bw.write('\n');
@@ -21,7 +21,9 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 import org.rschwietzke.CheaperCharBuffer;
 import org.rschwietzke.FastRandom;
@@ -34,6 +36,9 @@ public class CreateMeasurements2 {
 
     private static final String FILE = "./measurements2.txt";
 
+    // seeds all FastRandom instances, replaced by a seeded generator if a seed is given
+    private static RandomGenerator seeds = ThreadLocalRandom.current();
+
     static class WeatherStation {
         final static char[] NUMBERS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' };
 
@@ -41,7 +46,7 @@ public class CreateMeasurements2 {
         final int meanTemperature;
 
         final char[] firstPart;
-        final FastRandom r = new FastRandom(ThreadLocalRandom.current().nextLong());
+        final FastRandom r = new FastRandom(seeds.nextLong());
 
         WeatherStation(String id, double meanTemperature) {
             this.id = id;
@@ -75,18 +80,21 @@ public class CreateMeasurements2 {
     public static void main(String[] args) throws Exception {
         long start = System.currentTimeMillis();
 
-        if (args.length != 1) {
-            System.out.println("Usage: create_measurements.sh <number of records to create>");
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: create_measurements2.sh <number of records to create> [<seed>]");
             System.exit(1);
         }
 
         int size = 0;
         try {
             size = Integer.parseInt(args[0]);
+            if (args.length == 2) {
+                seeds = new SplittableRandom(Long.parseLong(args[1]));
+            }
         }
         catch (NumberFormatException e) {
-            System.out.println("Invalid value for <number of records to create>");
-            System.out.println("Usage: CreateMeasurements <number of records to create>");
+            System.out.println("Invalid value for <number of records to create> or <seed>");
+            System.out.println("Usage: CreateMeasurements2 <number of records to create> [<seed>]");
             System.exit(1);
         }
 
@@ -558,10 +566,10 @@ public class CreateMeasurements2 {
 
         // use a fast ranodm impl without atomics to be able to utilize the cpu better
         // and avoid sideeffects, FastRandom is very fake random and does not have a state
-        final FastRandom r1 = new FastRandom(ThreadLocalRandom.current().nextLong());
-        final FastRandom r2 = new FastRandom(ThreadLocalRandom.current().nextLong());
-        final FastRandom r3 = new FastRandom(ThreadLocalRandom.current().nextLong());
-        final FastRandom r4 = new FastRandom(ThreadLocalRandom.current().nextLong());
+        final FastRandom r1 = new FastRandom(seeds.nextLong());
+        final FastRandom r2 = new FastRandom(seeds.nextLong());
+        final FastRandom r3 = new FastRandom(seeds.nextLong());
+        final FastRandom r4 = new FastRandom(seeds.nextLong());
 
         // write to a fix buffer first, don't create strings ever
         // reuse buffer
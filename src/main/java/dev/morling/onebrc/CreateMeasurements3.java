@@ -23,8 +23,13 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.SplittableRandom;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToIntFunction;
+import java.util.random.RandomGenerator;
 
 public class CreateMeasurements3 {
 
@@ -32,25 +37,39 @@ public class CreateMeasurements3 {
     public static final int KEYSET_SIZE = 10_000;
 
     public static void main(String[] args) throws Exception {
-        if (args.length != 1) {
-            System.out.println("Usage: create_measurements3.sh <number of records to create>");
-            System.exit(1);
-        }
-        int size = 0;
+        String usage = "Usage: create_measurements3.sh <number of records to create> [<seed>] [--distribution=<distribution>]";
+        int size = -1;
+        RandomGenerator rnd = ThreadLocalRandom.current();
+        String distributionSpec = "uniform";
         try {
-            size = Integer.parseInt(args[0]);
+            for (String arg : args) {
+                if (arg.startsWith("--distribution=")) {
+                    distributionSpec = arg.substring(arg.indexOf('=') + 1);
+                }
+                else if (size < 0) {
+                    size = Integer.parseInt(arg);
+                }
+                else {
+                    rnd = new SplittableRandom(Long.parseLong(arg));
+                }
+            }
         }
         catch (NumberFormatException e) {
-            System.out.println("Invalid value for <number of records to create>");
-            System.out.println("Usage: create_measurements3.sh <number of records to create>");
+            System.out.println("Invalid value for <number of records to create> or <seed>");
+            System.out.println(usage);
+            System.exit(1);
+        }
+        if (size < 0) {
+            System.out.println(usage);
+            System.out.println("<distribution> is one of uniform, zipf[:<exponent>], hotspot[:<key share>[:<row share>]], adversarial");
             System.exit(1);
         }
-        final var weatherStations = generateWeatherStations();
+        final var distribution = distribution(distributionSpec, rnd);
+        final var weatherStations = distribution.stations();
         final var start = System.currentTimeMillis();
-        final var rnd = ThreadLocalRandom.current();
         try (var out = new BufferedWriter(new FileWriter("measurements.txt"))) {
             for (int i = 1; i <= size; i++) {
-                var station = weatherStations.get(rnd.nextInt(KEYSET_SIZE));
+                var station = weatherStations.get(distribution.next(rnd));
                 double temp = rnd.nextGaussian(station.avgTemp, 7.0);
                 out.write(station.name);
                 out.write(';');
@@ -63,10 +82,98 @@ public class CreateMeasurements3 {
         }
     }
 
-    record WeatherStation(String name, float avgTemp) {
+    /**
+     * The stations to draw from and how to pick one for each row.
+     */
+    public record Distribution(List<WeatherStation> stations, ToIntFunction<RandomGenerator> chooser) {
+
+        public int next(RandomGenerator rnd) {
+            return chooser.applyAsInt(rnd);
+        }
+    }
+
+    /**
+     * Creates the distribution described by {@code spec}:
+     * <ul>
+     * <li>{@code uniform}: every station equally likely</li>
+     * <li>{@code zipf[:<exponent>]}: the station of rank k, in generation order, is drawn with a probability
+     * proportional to 1/k^exponent, the exponent defaulting to 1</li>
+     * <li>{@code hotspot[:<key share>[:<row share>]]}: a share of the stations, 1% by default, gets a share of the rows,
+     * 90% by default, both uniformly distributed within the hot and the cold stations</li>
+     * <li>{@code adversarial}: uniformly distributed stations whose names all collide in the hash tables of
+     * {@code CalculateAverage_thomaswue} and {@code CalculateAverage_merykitty}, see {@link #collidingStations}</li>
+     * </ul>
+     */
+    public static Distribution distribution(String spec, RandomGenerator rnd) throws Exception {
+        String[] parts = spec.split(":");
+        switch (parts[0]) {
+            case "uniform": {
+                return new Distribution(generateWeatherStations(rnd), r -> r.nextInt(KEYSET_SIZE));
+            }
+            case "zipf": {
+                double exponent = parts.length > 1 ? Double.parseDouble(parts[1]) : 1.0;
+                double[] cdf = new double[KEYSET_SIZE];
+                double total = 0;
+                for (int k = 0; k < KEYSET_SIZE; k++) {
+                    total += 1 / Math.pow(k + 1, exponent);
+                    cdf[k] = total;
+                }
+                double norm = total;
+                return new Distribution(generateWeatherStations(rnd), r -> {
+                    int index = Arrays.binarySearch(cdf, r.nextDouble() * norm);
+                    return Math.min(index < 0 ? -index - 1 : index, KEYSET_SIZE - 1);
+                });
+            }
+            case "hotspot": {
+                double keyShare = parts.length > 1 ? Double.parseDouble(parts[1]) : 0.01;
+                double rowShare = parts.length > 2 ? Double.parseDouble(parts[2]) : 0.9;
+                int hot = Math.max(1, (int) (KEYSET_SIZE * keyShare));
+                return new Distribution(generateWeatherStations(rnd),
+                        r -> r.nextDouble() < rowShare ? r.nextInt(hot) : hot + r.nextInt(KEYSET_SIZE - hot));
+            }
+            case "adversarial": {
+                return new Distribution(collidingStations(rnd), r -> r.nextInt(KEYSET_SIZE));
+            }
+            default:
+                throw new IllegalArgumentException("Unknown distribution: " + spec);
+        }
+    }
+
+    /**
+     * Generates {@link #KEYSET_SIZE} stations whose names are {@code "A" + w1 + w2 + w1 + w2}, each {@code w} being
+     * four ASCII letters and {@code w1} starting with {@code "dvr"}. thomaswue hashes the XOR of the four-byte words
+     * after the first byte, in which {@code w1} and {@code w2} cancel out, and merykitty hashes the first four bytes,
+     * {@code "Advr"} for all names; both therefore map every station to the same bucket.
+     */
+    public static List<WeatherStation> collidingStations(RandomGenerator rnd) {
+        String letters = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+        var names = new HashSet<String>();
+        var weatherStations = new ArrayList<WeatherStation>();
+        while (weatherStations.size() < KEYSET_SIZE) {
+            var w1 = "dvr" + letters.charAt(rnd.nextInt(letters.length()));
+            var w2 = new StringBuilder();
+            for (int i = 0; i < 4; i++) {
+                w2.append(letters.charAt(rnd.nextInt(letters.length())));
+            }
+            var name = "A" + w1 + w2 + w1 + w2;
+            if (names.add(name)) {
+                weatherStations.add(new WeatherStation(name, (float) (rnd.nextDouble() * 40 - 10)));
+            }
+        }
+        return weatherStations;
+    }
+
+    public record WeatherStation(String name, float avgTemp) {
+    }
+
+    public static ArrayList<WeatherStation> generateWeatherStations() throws Exception {
+        return generateWeatherStations(ThreadLocalRandom.current());
     }
 
-    private static ArrayList<WeatherStation> generateWeatherStations() throws Exception {
+    /**
+     * Generates the stations drawing from {@code rnd}, so that a seeded generator always yields the same stations.
+     */
+    public static ArrayList<WeatherStation> generateWeatherStations(RandomGenerator rnd) throws Exception {
         // Use a public list of city names and concatenate them all into a long string,
         // which we'll use as a "source of city name randomness"
         var bigName = new StringBuilder(1 << 20);
@@ -88,7 +195,6 @@ public class CreateMeasurements3 {
             skipComments(rows);
             final var nameSource = new StringReader(bigName.toString());
             final var buf = new char[MAX_NAME_LEN];
-            final var rnd = ThreadLocalRandom.current();
             final double yOffset = 4;
             final double factor = 2500;
             final double xOffset = 0.372;
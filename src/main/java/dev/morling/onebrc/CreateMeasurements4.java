@@ -0,0 +1,228 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc;
+
+import dev.morling.onebrc.core.Stats;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.rschwietzke.FastRandom;
+
+/**
+ * Parallel version of {@link CreateMeasurements}, with the same stations and distribution. The rows are generated in
+ * chunks of {@value #CHUNK_ROWS}, each formatted by one of the worker threads straight into a direct byte buffer and
+ * written at its offset in the file with a positional write.
+ * <p>
+ * All rows come from one {@link FastRandom} stream, every row taking {@value #STEPS_PER_ROW} steps of it. A chunk
+ * jumps the generator straight to its first row, so any range of rows can be generated on its own: with a first row
+ * argument, the file holds exactly those lines of the file generated from row 0 with the same seed. The result of
+ * aggregating the file is accumulated while generating it and written to {@code measurements.out}, in the format of
+ * the {@code .out} files in {@code src/test/resources/samples}.
+ */
+public class CreateMeasurements4 {
+
+    private static final Path MEASUREMENT_FILE = Path.of("./measurements.txt");
+    private static final Path EXPECTED_FILE = Path.of("./measurements.out");
+
+    private static final int CHUNK_ROWS = 1 << 20;
+
+    // Station, and two uniform values for the Box-Muller transform.
+    private static final int STEPS_PER_ROW = 3;
+
+    // ";-99.9\n"
+    private static final int MAX_VALUE_LENGTH = 7;
+
+    public static void main(String[] args) throws Exception {
+        long start = System.currentTimeMillis();
+
+        if (args.length < 1 || args.length > 3) {
+            System.out.println("Usage: create_measurements4.sh <number of records to create> [<seed> [<first record>]]");
+            System.exit(1);
+        }
+
+        long size = 0;
+        long seed = ThreadLocalRandom.current().nextLong();
+        long firstRow = 0;
+        try {
+            size = Long.parseLong(args[0]);
+            if (args.length >= 2) {
+                seed = Long.parseLong(args[1]);
+            }
+            if (args.length == 3) {
+                firstRow = Long.parseLong(args[2]);
+            }
+        }
+        catch (NumberFormatException e) {
+            System.out.println("Invalid value for <number of records to create>, <seed> or <first record>");
+            System.out.println("Usage: CreateMeasurements4 <number of records to create> [<seed> [<first record>]]");
+            System.exit(1);
+        }
+
+        List<CreateMeasurements.WeatherStation> stations = CreateMeasurements.STATIONS;
+        int stationCount = stations.size();
+        byte[][] names = new byte[stationCount][];
+        double[] means = new double[stationCount];
+        int maxLineLength = 0;
+        for (int i = 0; i < stationCount; i++) {
+            names[i] = stations.get(i).id().getBytes(StandardCharsets.UTF_8);
+            means[i] = stations.get(i).meanTemperature();
+            maxLineLength = Math.max(maxLineLength, names[i].length + MAX_VALUE_LENGTH);
+        }
+
+        long chunks = Math.ceilDiv(size, CHUNK_ROWS);
+        ChunkOffsets offsets = new ChunkOffsets();
+        AtomicLong nextChunk = new AtomicLong();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int bufferSize = CHUNK_ROWS * maxLineLength;
+        long rows = size;
+        long first = firstRow;
+        // xorshift gets stuck on a zero state, so the seed is scrambled rather than used as is.
+        long state = seed ^ 0x9E3779B97F4A7C15L;
+
+        int[] min = new int[stationCount];
+        int[] max = new int[stationCount];
+        long[] sum = new long[stationCount];
+        long[] count = new long[stationCount];
+        Arrays.fill(min, Integer.MAX_VALUE);
+        Arrays.fill(max, Integer.MIN_VALUE);
+
+        try (FileChannel channel = FileChannel.open(MEASUREMENT_FILE, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Thread[] workers = new Thread[threads];
+            Throwable[] failure = new Throwable[1];
+            for (int t = 0; t < threads; t++) {
+                workers[t] = Thread.ofPlatform().start(() -> {
+                    try {
+                        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+                        int[] localMin = new int[stationCount];
+                        int[] localMax = new int[stationCount];
+                        long[] localSum = new long[stationCount];
+                        long[] localCount = new long[stationCount];
+                        Arrays.fill(localMin, Integer.MAX_VALUE);
+                        Arrays.fill(localMax, Integer.MIN_VALUE);
+                        long chunk;
+                        while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                            buffer.clear();
+                            var random = new FastRandom(state);
+                            random.jump((first + chunk * CHUNK_ROWS) * STEPS_PER_ROW);
+                            long chunkRows = Math.min(CHUNK_ROWS, rows - chunk * CHUNK_ROWS);
+                            for (long i = 0; i < chunkRows; i++) {
+                                int station = (int) (((random.nextLong() >>> 32) * stationCount) >>> 32);
+                                double u1 = ((random.nextLong() >>> 11) + 1) * 0x1.0p-53;
+                                double u2 = (random.nextLong() >>> 11) * 0x1.0p-53;
+                                double gaussian = Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+                                int value = (int) Math.max(-999, Math.min(999, Math.round((means[station] + 10 * gaussian) * 10.0)));
+                                buffer.put(names[station]);
+                                putMeasurement(buffer, value);
+                                localMin[station] = Math.min(localMin[station], value);
+                                localMax[station] = Math.max(localMax[station], value);
+                                localSum[station] += value;
+                                localCount[station]++;
+                            }
+                            buffer.flip();
+                            long position = offsets.claim(chunk, buffer.remaining());
+                            while (buffer.hasRemaining()) {
+                                position += channel.write(buffer, position);
+                            }
+                        }
+                        synchronized (count) {
+                            for (int i = 0; i < stationCount; i++) {
+                                min[i] = Math.min(min[i], localMin[i]);
+                                max[i] = Math.max(max[i], localMax[i]);
+                                sum[i] += localSum[i];
+                                count[i] += localCount[i];
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        failure[0] = e;
+                        offsets.fail();
+                    }
+                });
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            if (failure[0] != null) {
+                throw new IllegalStateException("Failed to write measurements", failure[0]);
+            }
+        }
+
+        TreeMap<String, Stats> expected = new TreeMap<>();
+        for (int i = 0; i < stationCount; i++) {
+            if (count[i] > 0) {
+                expected.put(stations.get(i).id(), new Stats(min[i], max[i], sum[i], count[i]));
+            }
+        }
+        Files.writeString(EXPECTED_FILE, expected + "\n");
+        System.out.printf("Created file with %,d measurements in %s ms (seed %d)%n", size, System.currentTimeMillis() - start, seed);
+    }
+
+    // Writes ";<temperature>\n" for a value in tenths of a degree.
+    private static void putMeasurement(ByteBuffer buffer, int value) {
+        buffer.put((byte) ';');
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        if (value >= 100) {
+            buffer.put((byte) ('0' + value / 100));
+        }
+        buffer.put((byte) ('0' + value / 10 % 10));
+        buffer.put((byte) '.');
+        buffer.put((byte) ('0' + value % 10));
+        buffer.put((byte) '\n');
+    }
+
+    /**
+     * Assigns each chunk its file offset, the end of the previous chunk. Chunks are claimed in order and take about
+     * the same time to format, so a worker rarely waits here.
+     */
+    private static final class ChunkOffsets {
+        private long nextChunk;
+        private long nextOffset;
+        private boolean failed;
+
+        synchronized long claim(long chunk, int length) throws InterruptedException {
+            while (nextChunk != chunk && !failed) {
+                wait();
+            }
+            if (failed) {
+                throw new IllegalStateException("Another worker failed");
+            }
+            long offset = nextOffset;
+            nextOffset += length;
+            nextChunk++;
+            notifyAll();
+            return offset;
+        }
+
+        synchronized void fail() {
+            failed = true;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Pins the calling thread to a set of CPUs with Linux' {@code sched_setaffinity}, see {@link Native}. Memory the
+ * thread touches first, such as its {@link StationTable} and the pages of its part of the input, is then allocated on
+ * the node of those CPUs by the kernel's first-touch policy.
+ */
+final class Affinity {
+
+    private static final MethodHandle SCHED_SETAFFINITY = Native.lookup("sched_setaffinity",
+            FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG, ValueLayout.ADDRESS));
+
+    private Affinity() {
+    }
+
+    /**
+     * Restricts the calling thread to {@code cpus}. Returns {@code false} if that is not supported on this platform
+     * or the kernel refused, in which case the thread keeps running where it was.
+     */
+    static boolean pin(int[] cpus) {
+        if (SCHED_SETAFFINITY == null || cpus.length == 0) {
+            return false;
+        }
+        int maxCpu = 0;
+        for (int cpu : cpus) {
+            maxCpu = Math.max(maxCpu, cpu);
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            // A cpu_set_t of whole longs, bit i standing for CPU i.
+            long maskSize = (maxCpu / Long.SIZE + 1) * (long) Long.BYTES;
+            MemorySegment mask = arena.allocate(maskSize, Long.BYTES);
+            for (int cpu : cpus) {
+                long offset = (cpu / Long.SIZE) * (long) Long.BYTES;
+                mask.set(ValueLayout.JAVA_LONG, offset, mask.get(ValueLayout.JAVA_LONG, offset) | 1L << (cpu % Long.SIZE));
+            }
+            // A pid of 0 stands for the calling thread.
+            return (int) SCHED_SETAFFINITY.invokeExact(0, maskSize, mask) == 0;
+        }
+        catch (Throwable e) {
+            return false;
+        }
+    }
+}
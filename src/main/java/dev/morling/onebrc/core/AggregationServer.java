@@ -0,0 +1,148 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Keeps an {@link Aggregator} resident behind a Unix domain socket, so that repeated runs pay neither JVM startup
+ * nor JIT warmup. Each connection carries one request, a single line holding the file, directory or glob to aggregate
+ * (see {@link InputFiles}), optionally followed by a tab and a station name:
+ *
+ * <pre>
+ * printf 'measurements.txt\n' | nc -UN /tmp/1brc.sock
+ * printf 'measurements.txt\tHamburg\n' | nc -UN /tmp/1brc.sock
+ * </pre>
+ *
+ * The response is exactly what {@code CalculateAverage_core} prints for the same file, {@code {Abha=...}} and a
+ * newline, or just the filtered station. Failed requests get a line starting with {@code "error: "} instead. Relative
+ * paths are resolved against the working directory of the server. Requests are served one at a time, each using all
+ * threads of the aggregator; the latency of every request is logged to {@code log}.
+ */
+public final class AggregationServer implements Closeable {
+
+    private final Aggregator aggregator;
+    private final Path socket;
+    private final PrintStream log;
+    private final ServerSocketChannel channel;
+
+    public AggregationServer(Aggregator aggregator, Path socket, PrintStream log) throws IOException {
+        this.aggregator = aggregator;
+        this.socket = socket;
+        this.log = log;
+        // A socket file left behind by a killed server would fail the bind.
+        Files.deleteIfExists(socket);
+        this.channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        this.channel.bind(UnixDomainSocketAddress.of(socket));
+    }
+
+    /**
+     * Serves requests until the server is closed.
+     */
+    public void serve() throws IOException {
+        while (channel.isOpen()) {
+            SocketChannel client;
+            try {
+                client = channel.accept();
+            }
+            catch (IOException e) {
+                if (!channel.isOpen()) {
+                    return;
+                }
+                throw e;
+            }
+            try (client) {
+                handle(client);
+            }
+            catch (IOException e) {
+                log.println("Request failed: " + e);
+            }
+        }
+    }
+
+    private void handle(SocketChannel client) throws IOException {
+        var reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+        String request = reader.readLine();
+        if (request == null) {
+            return;
+        }
+        int tab = request.indexOf('\t');
+        String file = tab < 0 ? request : request.substring(0, tab);
+        String station = tab < 0 ? null : request.substring(tab + 1);
+
+        long begin = System.nanoTime();
+        String response;
+        try {
+            response = format(aggregator.aggregate(InputFiles.resolve(file)), station);
+        }
+        catch (IOException | RuntimeException e) {
+            response = "error: " + e + "\n";
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        OutputStream out = Channels.newOutputStream(client);
+        out.write(response.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        log.println(String.format(Locale.ROOT, "%s%s: %.1f ms", file, station == null ? "" : " [" + station + "]", elapsed / 1e6));
+    }
+
+    private static String format(Map<String, Stats> result, String station) {
+        if (station == null) {
+            return result + "\n";
+        }
+        Stats stats = result.get(station);
+        return stats == null ? "{}\n" : "{" + station + "=" + stats + "}\n";
+    }
+
+    /**
+     * Sends a request to the server listening on {@code socket} and copies the response to {@code out}. Returns
+     * {@code false} if the server reported an error.
+     */
+    public static boolean request(Path socket, String file, String station, OutputStream out) throws IOException {
+        try (SocketChannel client = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            String request = (station == null ? file : file + "\t" + station) + "\n";
+            Channels.newOutputStream(client).write(request.getBytes(StandardCharsets.UTF_8));
+            client.shutdownOutput();
+            InputStream in = Channels.newInputStream(client);
+            byte[] response = in.readAllBytes();
+            out.write(response);
+            out.flush();
+            return response.length > 0 && response[0] == '{';
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        Files.deleteIfExists(socket);
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Reusable aggregation engine for files in the {@code <station>;<temperature>} format. The input is memory mapped,
+ * handed out to the worker threads in line-aligned segments by a {@link SegmentScheduler} and parsed by
+ * {@link SegmentParser}; the per-thread {@link StationTable}s are merged pairwise as the workers finish, see
+ * {@link TreeMerge}, and the result is put into a map sorted by station name.
+ *
+ * <pre>
+ * Map&lt;String, Stats&gt; result = new Aggregator().aggregate(Path.of("measurements.txt"));
+ * System.out.println(result); // {Abha=-23.0/18.0/59.2, ...}
+ * </pre>
+ *
+ * Use {@link #builder()} for anything beyond the thread count.
+ */
+public final class Aggregator {
+
+    // Lines per batch of the tokenizer, small enough for the tokens of a batch to stay in the L1 cache.
+    static final int BATCH_LINES = 1024;
+
+    private final int threads;
+    private final Scheduling scheduling;
+    private final Mapping mapping;
+    private final ReadPipeline reads;
+    private final LineTokenizer tokenizer;
+    private final Consumer<List<WorkerStats>> workerStatsListener;
+    private final Instrumentation instrumentation;
+    private final Histogram.Mode histogramMode;
+    private final NumaTopology numa;
+    private final int[] nodeOfWorker;
+
+    public Aggregator() {
+        this(builder());
+    }
+
+    public Aggregator(int threads) {
+        this(builder().threads(threads));
+    }
+
+    private Aggregator(Builder builder) {
+        this.threads = builder.threads;
+        this.scheduling = builder.scheduling;
+        this.mapping = builder.mapping;
+        this.reads = builder.reads;
+        this.tokenizer = builder.tokenizer;
+        this.workerStatsListener = builder.workerStatsListener;
+        this.instrumentation = builder.instrumentation;
+        this.histogramMode = builder.histogramMode;
+        // On a single node there is nothing to place, and linking the affinity call alone takes a few hundred ms.
+        this.numa = builder.numa != null && builder.numa.nodes() > 1 ? builder.numa : null;
+        this.nodeOfWorker = numa != null ? numa.place(threads) : null;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private Scheduling scheduling = Scheduling.ADAPTIVE;
+        private Mapping mapping = Mapping.PLAIN;
+        private ReadPipeline reads;
+        private LineTokenizer tokenizer;
+        private Consumer<List<WorkerStats>> workerStatsListener;
+        private Instrumentation instrumentation;
+        private Histogram.Mode histogramMode;
+        private NumaTopology numa;
+
+        private Builder() {
+        }
+
+        public Builder threads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads must be positive: " + threads);
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder scheduling(Scheduling scheduling) {
+            this.scheduling = scheduling;
+            return this;
+        }
+
+        /**
+         * How input files are memory mapped, see {@link Mapping}. Does not apply to
+         * {@link Aggregator#aggregate(MemorySegment)} and {@link Aggregator#aggregate(ReadableByteChannel)}.
+         */
+        public Builder mapping(Mapping mapping) {
+            this.mapping = mapping;
+            return this;
+        }
+
+        /**
+         * Reads input files through {@code pipeline} instead of memory mapping them. The files are then read one
+         * after another, each by all workers, and {@link #mapping} does not apply. Does not apply to
+         * {@link Aggregator#aggregateIncremental}.
+         */
+        public Builder reads(ReadPipeline pipeline) {
+            this.reads = pipeline;
+            return this;
+        }
+
+        /**
+         * Parses with {@code tokenizer}, typically {@link LineTokenizer#create()}: each worker tokenizes
+         * {@value Aggregator#BATCH_LINES} lines at a time and then accumulates the whole batch, instead of the single loop of
+         * {@link SegmentParser#parse(long, long, StationTable)}. Requires {@code --add-modules jdk.incubator.vector}.
+         */
+        public Builder tokenizer(LineTokenizer tokenizer) {
+            this.tokenizer = tokenizer;
+            return this;
+        }
+
+        /**
+         * Receives the busy/idle times of all workers after each aggregation.
+         */
+        public Builder workerStats(Consumer<List<WorkerStats>> listener) {
+            this.workerStatsListener = listener;
+            return this;
+        }
+
+        /**
+         * Records input size, line counts, phase durations and table probe statistics of all aggregations into
+         * {@code instrumentation}. Without it, no such data is gathered.
+         */
+        public Builder instrumentation(Instrumentation instrumentation) {
+            this.instrumentation = instrumentation;
+            return this;
+        }
+
+        /**
+         * Collects a {@link Histogram} per station, so that {@link Stats#percentile(double)} can be used on the
+         * results. Not supported by {@link Aggregator#aggregateIncremental}.
+         */
+        public Builder histograms(Histogram.Mode mode) {
+            this.histogramMode = mode;
+            return this;
+        }
+
+        /**
+         * Places the workers on the nodes of {@code topology}, typically {@link NumaTopology#detect()}: each node
+         * gets a contiguous range of every input, its workers are pinned to its CPUs, and the tables are merged per
+         * node before the node results are merged. Best combined with {@code -XX:+UseNUMA}, so that the workers'
+         * tables are allocated on their own node, too. Ignored for a single node, and not applied to
+         * {@link Aggregator#aggregate(ReadableByteChannel)}.
+         */
+        public Builder numa(NumaTopology topology) {
+            this.numa = topology;
+            return this;
+        }
+
+        public Aggregator build() {
+            return new Aggregator(this);
+        }
+    }
+
+    /**
+     * Aggregates the given file, returning the stats per station sorted by name.
+     */
+    public Map<String, Stats> aggregate(Path file) throws IOException {
+        return aggregate(List.of(file));
+    }
+
+    /**
+     * Aggregates all given files into one result, returning the stats per station sorted by name. The segments of all
+     * files are handed out from one work queue, see {@link SegmentScheduler#concat}, so many small files are
+     * processed as much in parallel as one large file. Use {@link InputFiles#resolve} to expand a directory or glob.
+     */
+    public Map<String, Stats> aggregate(List<Path> files) throws IOException {
+        TreeMap<String, Stats> result = new TreeMap<>();
+        aggregateTable(files).putInto(result);
+        return result;
+    }
+
+    /**
+     * Aggregates all given files like {@link #aggregate(List)}, but returns the merged table with the station names
+     * still in UTF-8, e.g. for {@link ResultWriter}.
+     */
+    public StationTable aggregateTable(List<Path> files) throws IOException {
+        if (reads != null) {
+            StationTable result = new StationTable(histogramMode);
+            for (Path file : files) {
+                try (var scheduler = new FileReadScheduler(file, reads, threads)) {
+                    if (instrumentation != null) {
+                        instrumentation.mapped(1, scheduler.fileSize());
+                    }
+                    result.merge(aggregate(scheduler));
+                }
+            }
+            return result;
+        }
+        try (var arena = Arena.ofShared()) {
+            long begin = System.nanoTime();
+            long mappedBytes = 0;
+            List<SegmentScheduler> schedulers = new ArrayList<>(files.size());
+            long[] ranges = new long[2 * files.size()];
+            for (Path file : files) {
+                try (var fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    long fileSize = fileChannel.size();
+                    if (fileSize == 0) {
+                        continue;
+                    }
+                    // The mapping stays valid after closing the channel, until the arena is closed.
+                    long start = mapping.map(fileChannel, 0, fileSize, arena).address();
+                    ranges[2 * schedulers.size()] = start;
+                    ranges[2 * schedulers.size() + 1] = start + fileSize;
+                    schedulers.add(schedule(start, start + fileSize));
+                    mappedBytes += fileSize;
+                }
+            }
+            if (instrumentation != null) {
+                instrumentation.mapped(files.size(), mappedBytes);
+                instrumentation.phase("map", System.nanoTime() - begin);
+            }
+            if (schedulers.isEmpty()) {
+                return new StationTable(histogramMode);
+            }
+            return aggregateMapped(SegmentScheduler.concat(schedulers, threads), ranges);
+        }
+    }
+
+    /**
+     * Aggregates the given native segment, which must consist of whole lines only.
+     */
+    public Map<String, Stats> aggregate(MemorySegment segment) {
+        if (!segment.isNative()) {
+            throw new IllegalArgumentException("Only native memory segments are supported");
+        }
+        TreeMap<String, Stats> result = new TreeMap<>();
+        long start = segment.address();
+        aggregate(schedule(start, start + segment.byteSize())).putInto(result);
+        return result;
+    }
+
+    /**
+     * Aggregates the lines read from {@code channel}, for input that cannot be memory mapped such as standard input
+     * or a pipe. The channel is read to its end by a separate thread into a pool of
+     * {@value ChannelScheduler#BUFFER_SIZE}-byte direct buffers, one per worker plus two; a missing {@code '\n'} after
+     * the last line is tolerated. The channel is not closed.
+     */
+    public Map<String, Stats> aggregate(ReadableByteChannel channel) throws IOException {
+        TreeMap<String, Stats> result = new TreeMap<>();
+        try (var scheduler = new ChannelScheduler(channel, threads)) {
+            aggregate(scheduler).putInto(result);
+        }
+        return result;
+    }
+
+    /**
+     * Aggregates an append-only file, only parsing the bytes added since the last call with the same
+     * {@code checkpointFile}. The checkpoint is updated to cover all complete lines of the file; a trailing line
+     * without {@code '\n'} is left for the next call. If the file no longer starts with the checkpointed content, it
+     * is aggregated from scratch.
+     */
+    public Map<String, Stats> aggregateIncremental(Path file, Path checkpointFile) throws IOException {
+        if (histogramMode != null) {
+            throw new UnsupportedOperationException("Checkpoints do not store histograms");
+        }
+        Checkpoint checkpoint = Checkpoint.load(checkpointFile);
+        try (var fileChannel = FileChannel.open(file, StandardOpenOption.READ); var arena = Arena.ofShared()) {
+            if (!checkpoint.matches(fileChannel)) {
+                checkpoint = Checkpoint.empty();
+            }
+            TreeMap<String, Stats> result = checkpoint.stats();
+            long offset = checkpoint.offset();
+            long end = offset;
+            long fileSize = fileChannel.size();
+            if (fileSize > offset) {
+                MemorySegment tail = mapping.map(fileChannel, offset, fileSize - offset, arena);
+                long start = tail.address();
+                long tailEnd = Segments.lastLineEnd(start, start + tail.byteSize());
+                if (tailEnd > start) {
+                    aggregateMapped(schedule(start, tailEnd), start, tailEnd).putInto(result);
+                }
+                end = offset + (tailEnd - start);
+            }
+            new Checkpoint(end, Checkpoint.fingerprint(fileChannel, end), result).save(checkpointFile);
+            return result;
+        }
+    }
+
+    /**
+     * Aggregates the given file and passes the rows to {@code rows} in station name order.
+     */
+    public void aggregate(Path file, BiConsumer<String, Stats> rows) throws IOException {
+        aggregate(file).forEach(rows);
+    }
+
+    private SegmentScheduler schedule(long start, long end) {
+        if (numa == null) {
+            return scheduling.create(start, end, threads);
+        }
+        return SegmentScheduler.perNode(start, end, nodeOfWorker, numa.nodes(), scheduling);
+    }
+
+    // Aggregates mapped input, the start and end of each mapped range in ranges, pre-faulting it if configured. The
+    // prefaulter is done before the arena unmaps the input.
+    private StationTable aggregateMapped(SegmentScheduler scheduler, long... ranges) {
+        if (!mapping.prefaults()) {
+            return aggregate(scheduler);
+        }
+        try (var prefaulter = new Prefaulter(scheduler, ranges)) {
+            return aggregate(prefaulter);
+        }
+    }
+
+    private StationTable aggregate(SegmentScheduler scheduler) {
+        StationTable[] tables = new StationTable[threads];
+        // Without NUMA placement, the workers merge their tables pairwise as they finish, see TreeMerge.
+        TreeMerge treeMerge = numa == null ? new TreeMerge(threads) : null;
+        long parsed = parse(scheduler, tables, treeMerge);
+
+        StationTable merged = treeMerge != null ? treeMerge.result() : mergePerNode(tables);
+        if (instrumentation != null) {
+            // From the moment the last worker finished parsing, so only the part of the merge not overlapping with it.
+            instrumentation.phase("merge", System.nanoTime() - parsed);
+            instrumentation.merged(merged.stats());
+        }
+        return merged;
+    }
+
+    // Merges the tables of each node on a thread of that node, so that only one table per node crosses the
+    // interconnect for the final merge.
+    private StationTable mergePerNode(StationTable[] tables) {
+        StationTable[] nodeTables = new StationTable[numa.nodes()];
+        Workers.run(numa.nodes(), node -> {
+            Affinity.pin(numa.cpus(node));
+            for (int i = 0; i < tables.length; i++) {
+                if (nodeOfWorker[i] != node) {
+                    continue;
+                }
+                if (nodeTables[node] == null) {
+                    nodeTables[node] = tables[i];
+                }
+                else {
+                    nodeTables[node].merge(tables[i]);
+                }
+            }
+        });
+        StationTable merged = null;
+        for (StationTable nodeTable : nodeTables) {
+            if (merged == null) {
+                merged = nodeTable;
+            }
+            else if (nodeTable != null) {
+                merged.merge(nodeTable);
+            }
+        }
+        return merged;
+    }
+
+    // Parses all segments into one table per worker, each offered to treeMerge when done if given, and returns the
+    // time at which the last worker finished parsing.
+    private long parse(SegmentScheduler scheduler, StationTable[] tables, TreeMerge treeMerge) {
+        long[][] counters = new long[threads][];
+        TableStats[] tableStats = new TableStats[threads];
+        long begin = System.nanoTime();
+        Workers.run(threads, index -> {
+            if (numa != null) {
+                Affinity.pin(numa.cpus(nodeOfWorker[index]));
+            }
+            StationTable table = new StationTable(histogramMode);
+            LineTokenizer.Batch batch = tokenizer != null ? new LineTokenizer.Batch(BATCH_LINES) : null;
+            long[] bounds = new long[2];
+            long segments = 0;
+            long bytes = 0;
+            long busy = 0;
+            while (scheduler.next(index, bounds)) {
+                long segmentStart = System.nanoTime();
+                if (batch == null) {
+                    SegmentParser.parse(bounds[0], bounds[1], table);
+                }
+                else {
+                    SegmentParser.parse(bounds[0], bounds[1], table, tokenizer, batch);
+                }
+                busy += System.nanoTime() - segmentStart;
+                segments++;
+                bytes += bounds[1] - bounds[0];
+            }
+            counters[index] = new long[]{ segments, bytes, busy, System.nanoTime(), 0 };
+            tables[index] = table;
+            if (instrumentation != null) {
+                tableStats[index] = table.stats();
+            }
+            if (treeMerge != null) {
+                long mergeStart = System.nanoTime();
+                treeMerge.offer(index, table);
+                counters[index][4] = System.nanoTime() - mergeStart;
+            }
+        });
+        long parsed = begin;
+        for (long[] c : counters) {
+            parsed = Math.max(parsed, c[3]);
+        }
+        long wallClock = parsed - begin;
+        if (workerStatsListener != null || instrumentation != null) {
+            List<WorkerStats> workerStats = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                long[] c = counters[i];
+                workerStats.add(new WorkerStats(i, (int) c[0], c[1], c[2], wallClock - c[2], c[4]));
+            }
+            if (workerStatsListener != null) {
+                workerStatsListener.accept(workerStats);
+            }
+            if (instrumentation != null) {
+                instrumentation.phase("parse", wallClock);
+                instrumentation.parsed(workerStats, List.of(tableStats));
+            }
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hands out blocks read from a {@link ReadableByteChannel}, for input that cannot be memory mapped such as a pipe.
+ * A reader thread fills a fixed pool of direct buffers, cuts each one after its last {@code '\n'} and carries the
+ * partial line over into the next buffer, similar to the {@code LineAlignedReader} of
+ * {@code CalculateAverage_kevinmcmurtrie}. Filled blocks are queued for the workers as in the
+ * {@code PooledChunkProcessor} of {@code CalculateAverage_entangled90}; a worker returns its block to the pool when it
+ * claims the next one.
+ */
+final class ChannelScheduler implements SegmentScheduler, AutoCloseable {
+
+    static final int BUFFER_SIZE = 4 * 1024 * 1024;
+
+    // Room for the word loads of the parser past the last line, and for a '\n' appended to an unterminated last line.
+    private static final int PADDING = 64;
+
+    private static final class Block {
+        final MemorySegment segment;
+        final ByteBuffer buffer;
+        int length;
+
+        Block(MemorySegment segment, ByteBuffer buffer) {
+            this.segment = segment;
+            this.buffer = buffer;
+        }
+    }
+
+    // Tells a worker that the input is exhausted.
+    private static final Block END = new Block(MemorySegment.NULL, null);
+
+    private final ReadableByteChannel channel;
+    private final int workers;
+    private final Arena arena = Arena.ofShared();
+    private final BlockingQueue<Block> free;
+    private final BlockingQueue<Block> filled;
+    // Only ever touched by the worker itself.
+    private final Block[] current;
+    private final Thread reader;
+    private volatile Throwable failure;
+
+    ChannelScheduler(ReadableByteChannel channel, int workers) {
+        this.channel = channel;
+        this.workers = workers;
+        // One block per worker, one being filled and one queued, so reading overlaps with parsing.
+        int blocks = workers + 2;
+        this.free = new ArrayBlockingQueue<>(blocks);
+        this.filled = new ArrayBlockingQueue<>(blocks + workers);
+        for (int i = 0; i < blocks; i++) {
+            MemorySegment segment = arena.allocate(BUFFER_SIZE + PADDING, 64);
+            free.add(new Block(segment, segment.asSlice(0, BUFFER_SIZE).asByteBuffer()));
+        }
+        this.current = new Block[workers];
+        this.reader = Thread.ofPlatform().daemon().name("channel-reader").start(this::read);
+    }
+
+    @Override
+    public boolean next(int worker, long[] bounds) {
+        if (current[worker] != null) {
+            free.add(current[worker]);
+            current[worker] = null;
+        }
+        Block block;
+        try {
+            block = filled.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for input", e);
+        }
+        if (block == END) {
+            return false;
+        }
+        current[worker] = block;
+        bounds[0] = block.segment.address();
+        bounds[1] = bounds[0] + block.length;
+        return true;
+    }
+
+    private void read() {
+        try {
+            Block block = free.take();
+            int carry = 0;
+            while (true) {
+                ByteBuffer buffer = block.buffer;
+                buffer.clear().position(carry);
+                boolean eof = false;
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                int length = buffer.position();
+                long address = block.segment.address();
+                int end = (int) (Segments.lastLineEnd(address, address + length) - address);
+                if (eof) {
+                    if (end < length) {
+                        block.segment.set(ValueLayout.JAVA_BYTE, length, (byte) '\n');
+                        end = length + 1;
+                    }
+                    block.length = end;
+                    filled.put(block);
+                    return;
+                }
+                if (end == 0) {
+                    throw new IllegalStateException("Line longer than " + BUFFER_SIZE + " bytes");
+                }
+                Block next = free.take();
+                carry = length - end;
+                MemorySegment.copy(block.segment, end, next.segment, 0, carry);
+                block.length = end;
+                filled.put(block);
+                block = next;
+            }
+        }
+        catch (Throwable t) {
+            failure = t;
+        }
+        finally {
+            for (int i = 0; i < workers; i++) {
+                filled.add(END);
+            }
+        }
+    }
+
+    /**
+     * Waits for the reader and releases the buffers, rethrowing any failure to read the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.interrupt();
+        try {
+            reader.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        arena.close();
+        if (failure instanceof IOException e) {
+            throw e;
+        }
+        if (failure != null && !(failure instanceof InterruptedException)) {
+            throw new IOException("Failed to read input", failure);
+        }
+    }
+}
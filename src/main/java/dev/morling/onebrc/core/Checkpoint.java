@@ -0,0 +1,139 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The state of an incremental aggregation: the stats of all lines before {@link #offset()} of an append-only input
+ * file. {@link #fingerprint()} covers the bytes just before the offset, so a file that was truncated or replaced
+ * since the checkpoint was written is detected and aggregated from scratch.
+ */
+public final class Checkpoint {
+
+    private static final int MAGIC = 0x31425243;
+    private static final int VERSION = 1;
+    private static final int FINGERPRINT_SIZE = 4096;
+
+    private final long offset;
+    private final int fingerprint;
+    private final TreeMap<String, Stats> stats;
+
+    public Checkpoint(long offset, int fingerprint, Map<String, Stats> stats) {
+        this.offset = offset;
+        this.fingerprint = fingerprint;
+        this.stats = new TreeMap<>(stats);
+    }
+
+    public static Checkpoint empty() {
+        return new Checkpoint(0, 0, Map.of());
+    }
+
+    public long offset() {
+        return offset;
+    }
+
+    public int fingerprint() {
+        return fingerprint;
+    }
+
+    public TreeMap<String, Stats> stats() {
+        return stats;
+    }
+
+    /**
+     * Whether this checkpoint still describes the beginning of the file open in {@code channel}.
+     */
+    public boolean matches(FileChannel channel) throws IOException {
+        return offset <= channel.size() && fingerprint == fingerprint(channel, offset);
+    }
+
+    /**
+     * Hash of the (up to) {@value #FINGERPRINT_SIZE} bytes before {@code offset}.
+     */
+    public static int fingerprint(FileChannel channel, long offset) throws IOException {
+        int length = (int) Math.min(FINGERPRINT_SIZE, offset);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset - length + buffer.position()) < 0) {
+                return 0;
+            }
+        }
+        return Arrays.hashCode(buffer.array());
+    }
+
+    /**
+     * Reads the checkpoint stored in {@code file}, or returns an empty one if it does not exist.
+     */
+    public static Checkpoint load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return empty();
+        }
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a checkpoint file: " + file);
+            }
+            long offset = in.readLong();
+            int fingerprint = in.readInt();
+            int size = in.readInt();
+            TreeMap<String, Stats> stats = new TreeMap<>();
+            for (int i = 0; i < size; i++) {
+                byte[] name = new byte[in.readUnsignedShort()];
+                in.readFully(name);
+                stats.put(new String(name, StandardCharsets.UTF_8), new Stats(in.readInt(), in.readInt(), in.readLong(), in.readLong()));
+            }
+            return new Checkpoint(offset, fingerprint, stats);
+        }
+    }
+
+    /**
+     * Writes this checkpoint to {@code file}, replacing it atomically.
+     */
+    public void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(offset);
+            out.writeInt(fingerprint);
+            out.writeInt(stats.size());
+            for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+                byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+                Stats s = entry.getValue();
+                out.writeInt(s.min);
+                out.writeInt(s.max);
+                out.writeLong(s.sum);
+                out.writeLong(s.count);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reconciles the lines split between the chunks of a file that are parsed independently of each other. Each worker
+ * passes its chunk to {@link #lines(int, ByteBuffer)}, which keeps the bytes before the first {@code '\n'} (the
+ * head, the end of a line started in the previous chunk) and after the last one (the tail, the start of a line
+ * ending in the next chunk) and returns the whole lines in between. Once all chunks are done, {@link #reconcile}
+ * joins the tail of every chunk with the head of the next one, in the spirit of {@code foldFootersAndHeaders} of
+ * {@code CalculateAverage_ebarlas}:
+ *
+ * <pre>
+ * ChunkBoundaries boundaries = new ChunkBoundaries();
+ * // on the worker of chunk i:
+ * ByteBuffer lines = boundaries.lines(i, chunk);
+ * // after all workers are done:
+ * boundaries.reconcile((line, nameLength, temperature) -&gt; ...);
+ * </pre>
+ *
+ * The number of chunks is not limited, and neither recording nor reconciling creates a {@code String}. A chunk
+ * without any {@code '\n'} is entirely in the middle of one line; the first chunk's head is the first line of the
+ * file, and the last chunk's tail is a last line without {@code '\n'}.
+ */
+public final class ChunkBoundaries {
+
+    /**
+     * Receives a reconciled line: the name in {@code line[0, nameLength)} and the temperature in tenths of a degree.
+     * {@code line} is reused for the next line.
+     */
+    @FunctionalInterface
+    public interface LineConsumer {
+        void accept(byte[] line, int nameLength, int temperature);
+    }
+
+    private static final byte[] NONE = new byte[0];
+
+    // All guarded by this, indexed by chunk; a null head marks a chunk not recorded (yet).
+    private byte[][] heads = new byte[16][];
+    private byte[][] tails = new byte[16][];
+    private boolean[] newLines = new boolean[16];
+    private int chunks;
+
+    /**
+     * Records the head and tail of chunk number {@code chunk}, the bytes between the position and the limit of
+     * {@code buffer}, and returns a slice of {@code buffer} with its whole lines, each ending with {@code '\n'}.
+     */
+    public ByteBuffer lines(int chunk, ByteBuffer buffer) {
+        int start = buffer.position();
+        int end = buffer.limit();
+        int firstNewLine = start;
+        while (firstNewLine < end && buffer.get(firstNewLine) != '\n') {
+            firstNewLine++;
+        }
+        if (firstNewLine == end) {
+            record(chunk, copy(buffer, start, end), NONE, false);
+            return buffer.slice(start, 0);
+        }
+        int lastNewLine = end - 1;
+        while (buffer.get(lastNewLine) != '\n') {
+            lastNewLine--;
+        }
+        record(chunk, copy(buffer, start, firstNewLine), copy(buffer, lastNewLine + 1, end), true);
+        return buffer.slice(firstNewLine + 1, lastNewLine + 1 - (firstNewLine + 1));
+    }
+
+    /**
+     * Passes every line split between chunks, and the first and last line of the file, to {@code consumer}, in file
+     * order. All chunks from 0 to the highest one recorded must have been recorded.
+     */
+    public synchronized void reconcile(LineConsumer consumer) {
+        byte[] line = new byte[128];
+        int length = 0;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            if (heads[chunk] == null) {
+                throw new IllegalStateException("Chunk " + chunk + " has not been recorded");
+            }
+            line = append(line, length, heads[chunk]);
+            length += heads[chunk].length;
+            if (!newLines[chunk]) {
+                continue;
+            }
+            accept(line, length, consumer);
+            line = append(line, 0, tails[chunk]);
+            length = tails[chunk].length;
+        }
+        accept(line, length, consumer);
+    }
+
+    private synchronized void record(int chunk, byte[] head, byte[] tail, boolean hasNewLine) {
+        if (chunk >= heads.length) {
+            int capacity = Math.max(heads.length * 2, chunk + 1);
+            heads = Arrays.copyOf(heads, capacity);
+            tails = Arrays.copyOf(tails, capacity);
+            newLines = Arrays.copyOf(newLines, capacity);
+        }
+        heads[chunk] = head;
+        tails[chunk] = tail;
+        newLines[chunk] = hasNewLine;
+        chunks = Math.max(chunks, chunk + 1);
+    }
+
+    private static void accept(byte[] line, int length, LineConsumer consumer) {
+        // Nothing split at this boundary, or an empty line at the end of the file.
+        if (length == 0) {
+            return;
+        }
+        int nameLength = 0;
+        while (line[nameLength] != ';') {
+            nameLength++;
+        }
+        consumer.accept(line, nameLength, Temperatures.parse(line, nameLength + 1, length - nameLength - 1));
+    }
+
+    private static byte[] append(byte[] line, int length, byte[] bytes) {
+        if (length + bytes.length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, length + bytes.length));
+        }
+        System.arraycopy(bytes, 0, line, length, bytes.length);
+        return line;
+    }
+
+    private static byte[] copy(ByteBuffer buffer, int from, int to) {
+        if (from == to) {
+            return NONE;
+        }
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        return bytes;
+    }
+}
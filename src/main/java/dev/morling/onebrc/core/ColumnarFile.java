@@ -0,0 +1,292 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A pre-parsed, memory-mappable copy of a measurements file: a dictionary of the station names and two columns, the
+ * int station id and the short temperature in tenths of a degree of every row. Converting costs two passes over the
+ * text once; afterwards aggregations run over the columns without any delimiter scanning or digit parsing.
+ *
+ * <pre>
+ * 0   int magic, int version, long rows, int stations, int unused,
+ *     long dictionary offset, long ids offset, long temperatures offset
+ * 64  dictionary: per station id an unsigned short length and the UTF-8 name
+ *     ids: rows * int, 64-byte aligned
+ *     temperatures: rows * short, 64-byte aligned
+ * </pre>
+ *
+ * All numbers are little-endian. Requires {@code --add-modules jdk.incubator.vector} for {@link #aggregate(String)}.
+ */
+public final class ColumnarFile implements AutoCloseable {
+
+    private static final int MAGIC = 0x314C4F43;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int ALIGNMENT = 64;
+
+    private static final ValueLayout.OfInt INT_LE = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG_LE = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfShort SHORT_LE = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+    // Same lane count as INT_SPECIES, so that a temperature vector widens into exactly one int vector.
+    private static final VectorSpecies<Short> SHORT_SPECIES = VectorSpecies.of(short.class,
+            VectorShape.forBitSize(INT_SPECIES.vectorBitSize() / 2));
+    // Lane sums are flushed to a long before they could overflow: 999 * 2^16 * 16 lanes < 2^31.
+    private static final int FLUSH_INTERVAL = 1 << 16;
+
+    private final Arena arena;
+    private final MemorySegment data;
+    private final long rows;
+    private final byte[][] names;
+    private final long idsOffset;
+    private final long tempsOffset;
+
+    private ColumnarFile(Arena arena, MemorySegment data, long rows, byte[][] names, long idsOffset, long tempsOffset) {
+        this.arena = arena;
+        this.data = data;
+        this.rows = rows;
+        this.names = names;
+        this.idsOffset = idsOffset;
+        this.tempsOffset = tempsOffset;
+    }
+
+    /**
+     * Converts the text file {@code text} into the columnar file {@code columnar}, using {@code threads} workers.
+     * The first pass collects the station dictionary and the number of rows of every segment, the second one writes
+     * each segment's rows at its offset in the columns.
+     */
+    public static void convert(Path text, Path columnar, int threads) throws IOException {
+        try (var textChannel = FileChannel.open(text, StandardOpenOption.READ);
+                var outChannel = FileChannel.open(columnar, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+                var arena = Arena.ofShared()) {
+            long textSize = textChannel.size();
+            long start = textSize == 0 ? 0 : textChannel.map(MapMode.READ_ONLY, 0, textSize, arena).address();
+            long[] bounds = textSize == 0 ? new long[threads + 1] : Segments.split(start, start + textSize, threads);
+
+            // First pass: dictionary and rows per segment.
+            StationTable[] tables = new StationTable[threads];
+            Workers.run(threads, i -> {
+                tables[i] = new StationTable();
+                SegmentParser.parse(bounds[i], bounds[i + 1], tables[i]);
+            });
+            StationTable dictionary = new StationTable();
+            long[] firstRow = new long[threads + 1];
+            for (int i = 0; i < threads; i++) {
+                dictionary.merge(tables[i]);
+                firstRow[i + 1] = firstRow[i] + tables[i].rows();
+            }
+            byte[][] names = dictionary.names();
+            long rows = firstRow[threads];
+
+            long dictionarySize = 0;
+            for (byte[] name : names) {
+                dictionarySize += Short.BYTES + name.length;
+            }
+            long idsOffset = align(HEADER_SIZE + dictionarySize);
+            long tempsOffset = align(idsOffset + rows * Integer.BYTES);
+            MemorySegment out = outChannel.map(MapMode.READ_WRITE, 0, tempsOffset + rows * Short.BYTES, arena);
+
+            out.set(INT_LE, 0, MAGIC);
+            out.set(INT_LE, 4, VERSION);
+            out.set(LONG_LE, 8, rows);
+            out.set(INT_LE, 16, names.length);
+            out.set(LONG_LE, 24, HEADER_SIZE);
+            out.set(LONG_LE, 32, idsOffset);
+            out.set(LONG_LE, 40, tempsOffset);
+            long position = HEADER_SIZE;
+            for (byte[] name : names) {
+                out.set(SHORT_LE, position, (short) name.length);
+                MemorySegment.copy(name, 0, out, ValueLayout.JAVA_BYTE, position + Short.BYTES, name.length);
+                position += Short.BYTES + name.length;
+            }
+
+            // Second pass: encode every segment into its slice of the columns.
+            long outAddress = out.address();
+            Workers.run(threads, i -> SegmentParser.encode(bounds[i], bounds[i + 1], dictionary,
+                    outAddress + idsOffset + firstRow[i] * Integer.BYTES, outAddress + tempsOffset + firstRow[i] * Short.BYTES));
+            out.force();
+        }
+    }
+
+    /**
+     * Maps the given columnar file. The mapping is released by {@link #close()}.
+     */
+    public static ColumnarFile open(Path file) throws IOException {
+        Arena arena = Arena.ofShared();
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MemorySegment data = channel.map(MapMode.READ_ONLY, 0, channel.size(), arena);
+            if (data.byteSize() < HEADER_SIZE || data.get(INT_LE, 0) != MAGIC || data.get(INT_LE, 4) != VERSION) {
+                throw new IOException("Not a columnar measurements file: " + file);
+            }
+            long rows = data.get(LONG_LE, 8);
+            byte[][] names = new byte[data.get(INT_LE, 16)][];
+            long position = data.get(LONG_LE, 24);
+            for (int i = 0; i < names.length; i++) {
+                names[i] = new byte[Short.toUnsignedInt(data.get(SHORT_LE, position))];
+                MemorySegment.copy(data, ValueLayout.JAVA_BYTE, position + Short.BYTES, names[i], 0, names[i].length);
+                position += Short.BYTES + names[i].length;
+            }
+            return new ColumnarFile(arena, data, rows, names, data.get(LONG_LE, 32), data.get(LONG_LE, 40));
+        }
+        catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    public int stations() {
+        return names.length;
+    }
+
+    /**
+     * Aggregates all rows, returning the stats per station sorted by name. Each worker accumulates a contiguous range
+     * of rows into primitive arrays indexed by station id.
+     */
+    public Map<String, Stats> aggregate(int threads) {
+        int stations = names.length;
+        int[][] mins = new int[threads][];
+        int[][] maxs = new int[threads][];
+        long[][] sums = new long[threads][];
+        long[][] counts = new long[threads][];
+        long rowsPerThread = Math.ceilDiv(rows, threads);
+        Workers.run(threads, t -> {
+            int[] min = new int[stations];
+            int[] max = new int[stations];
+            long[] sum = new long[stations];
+            long[] count = new long[stations];
+            Arrays.fill(min, Integer.MAX_VALUE);
+            Arrays.fill(max, Integer.MIN_VALUE);
+            long first = Math.min(t * rowsPerThread, rows);
+            long last = Math.min(first + rowsPerThread, rows);
+            for (long row = first; row < last; row++) {
+                int id = data.get(INT_LE, idsOffset + row * Integer.BYTES);
+                int temp = data.get(SHORT_LE, tempsOffset + row * Short.BYTES);
+                min[id] = Math.min(min[id], temp);
+                max[id] = Math.max(max[id], temp);
+                sum[id] += temp;
+                count[id]++;
+            }
+            mins[t] = min;
+            maxs[t] = max;
+            sums[t] = sum;
+            counts[t] = count;
+        });
+
+        TreeMap<String, Stats> result = new TreeMap<>();
+        for (int id = 0; id < stations; id++) {
+            Stats stats = new Stats();
+            for (int t = 0; t < threads; t++) {
+                stats.merge(new Stats(mins[t][id], maxs[t][id], sums[t][id], counts[t][id]));
+            }
+            if (stats.count > 0) {
+                result.put(new String(names[id], StandardCharsets.UTF_8), stats);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Aggregates the rows of a single station, or returns {@code null} if it does not occur. Compares whole vectors
+     * of station ids against the wanted one and accumulates the temperatures of the matching lanes.
+     */
+    public Stats aggregate(String station) {
+        byte[] wanted = station.getBytes(StandardCharsets.UTF_8);
+        int id = -1;
+        for (int i = 0; i < names.length; i++) {
+            if (Arrays.equals(names[i], wanted)) {
+                id = i;
+                break;
+            }
+        }
+        if (id < 0) {
+            return null;
+        }
+
+        int lanes = INT_SPECIES.length();
+        IntVector minAcc = IntVector.broadcast(INT_SPECIES, Integer.MAX_VALUE);
+        IntVector maxAcc = IntVector.broadcast(INT_SPECIES, Integer.MIN_VALUE);
+        IntVector sumAcc = IntVector.zero(INT_SPECIES);
+        long sum = 0;
+        long count = 0;
+        long row = 0;
+        long vectorRows = rows - rows % lanes;
+        int sinceFlush = 0;
+        for (; row < vectorRows; row += lanes) {
+            IntVector ids = IntVector.fromMemorySegment(INT_SPECIES, data, idsOffset + row * Integer.BYTES, ByteOrder.LITTLE_ENDIAN);
+            VectorMask<Integer> match = ids.eq(id);
+            if (!match.anyTrue()) {
+                continue;
+            }
+            IntVector temps = (IntVector) ShortVector.fromMemorySegment(SHORT_SPECIES, data, tempsOffset + row * Short.BYTES, ByteOrder.LITTLE_ENDIAN)
+                    .convertShape(VectorOperators.S2I, INT_SPECIES, 0);
+            minAcc = minAcc.lanewise(VectorOperators.MIN, temps, match);
+            maxAcc = maxAcc.lanewise(VectorOperators.MAX, temps, match);
+            sumAcc = sumAcc.add(temps, match);
+            count += match.trueCount();
+            if (++sinceFlush == FLUSH_INTERVAL) {
+                sum += sumAcc.reduceLanes(VectorOperators.ADD);
+                sumAcc = IntVector.zero(INT_SPECIES);
+                sinceFlush = 0;
+            }
+        }
+        Stats stats = new Stats(minAcc.reduceLanes(VectorOperators.MIN), maxAcc.reduceLanes(VectorOperators.MAX),
+                sum + sumAcc.reduceLanes(VectorOperators.ADD), count);
+
+        // Scalar tail.
+        for (; row < rows; row++) {
+            if (data.get(INT_LE, idsOffset + row * Integer.BYTES) == id) {
+                stats.add(data.get(SHORT_LE, tempsOffset + row * Short.BYTES));
+            }
+        }
+        return stats.count > 0 ? stats : null;
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private static long align(long offset) {
+        return (offset + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Hands out the blocks of a file read by {@link ReadPipeline#queueDepth()} reader threads with positional reads, in
+ * the spirit of an io_uring submission queue: each reader claims the next block of the file, waits for its slot in a
+ * fixed ring of page-aligned direct buffers to be released and reads straight into it, so that up to queue depth
+ * reads are in flight while the workers parse. With {@link ReadPipeline#direct()}, the file is opened with
+ * {@code O_DIRECT} and the reads bypass the page cache; file systems without support, such as tmpfs, are read
+ * through the cache.
+ * <p>
+ * Blocks are handed to the workers in file order. The partial line at the end of a block is carried over into the
+ * space reserved in front of the next block, as in {@link ChannelScheduler}; a worker releases its block when it
+ * claims the next one.
+ */
+final class FileReadScheduler implements SegmentScheduler, AutoCloseable {
+
+    // Alignment of buffers, file offsets and read sizes for O_DIRECT, and room for a carried over line.
+    private static final int ALIGNMENT = 4096;
+
+    // Room for the word loads of the parser past the last line, and for a '\n' appended to an unterminated last line.
+    private static final int PADDING = 64;
+
+    // ExtendedOpenOption.DIRECT of jdk.unsupported, looked up by name to keep the internal API out of the compilation;
+    // null if this JDK does not have it.
+    private static final OpenOption DIRECT = directOption();
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int bufferSize;
+    private final long blocks;
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment[] slots;
+    private final Thread[] readers;
+
+    // All of the following are guarded by this.
+    private long nextRead;
+    private long nextClaim;
+    // Block read into each slot, -1 while reading, and the last block released from it.
+    private final long[] ready;
+    private final long[] released;
+    // Block each worker is parsing, -1 for none.
+    private final long[] current;
+    // The partial line at the end of block carried, which the next block starts with.
+    private final byte[] carry = new byte[ALIGNMENT];
+    private int carryLength;
+    private long carried = -1;
+    private Throwable failure;
+
+    FileReadScheduler(Path file, ReadPipeline pipeline, int workers) throws IOException {
+        this.channel = open(file, pipeline.direct());
+        this.fileSize = channel.size();
+        this.bufferSize = Math.ceilDiv(pipeline.bufferSize(), ALIGNMENT) * ALIGNMENT;
+        this.blocks = Math.ceilDiv(fileSize, bufferSize);
+        // One buffer per worker and one per read in flight.
+        int ringSize = workers + pipeline.queueDepth();
+        this.slots = new MemorySegment[ringSize];
+        this.ready = new long[ringSize];
+        this.released = new long[ringSize];
+        for (int slot = 0; slot < ringSize; slot++) {
+            slots[slot] = arena.allocate(ALIGNMENT + bufferSize + PADDING, ALIGNMENT);
+            ready[slot] = -1;
+            released[slot] = slot - ringSize;
+        }
+        this.current = new long[workers];
+        Arrays.fill(current, -1);
+        this.readers = new Thread[pipeline.queueDepth()];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = Thread.ofPlatform().daemon().name("file-reader-" + i).start(this::read);
+        }
+    }
+
+    private static FileChannel open(Path file, boolean direct) throws IOException {
+        if (direct && DIRECT != null) {
+            try {
+                return FileChannel.open(file, StandardOpenOption.READ, DIRECT);
+            }
+            catch (IOException | UnsupportedOperationException e) {
+                // no O_DIRECT on this file system, read through the page cache
+            }
+        }
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    private static OpenOption directOption() {
+        try {
+            return (OpenOption) Class.forName("com.sun.nio.file.ExtendedOpenOption").getField("DIRECT").get(null);
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    long fileSize() {
+        return fileSize;
+    }
+
+    @Override
+    public boolean next(int worker, long[] bounds) {
+        long block;
+        MemorySegment segment;
+        int length;
+        synchronized (this) {
+            if (current[worker] >= 0) {
+                released[slot(current[worker])] = current[worker];
+                current[worker] = -1;
+                notifyAll();
+            }
+            block = nextClaim;
+            if (block >= blocks) {
+                return false;
+            }
+            nextClaim++;
+            int slot = slot(block);
+            try {
+                // Blocks complete out of order, but the carry is passed on in order.
+                while ((ready[slot] != block || carried != block - 1) && failure == null) {
+                    wait();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for input", e);
+            }
+            if (failure != null) {
+                nextClaim = blocks;
+                return false;
+            }
+            current[worker] = block;
+            segment = slots[slot];
+            length = (int) Math.min(bufferSize, fileSize - block * bufferSize);
+
+            // Put the partial line of the previous block in front of this one, and keep this block's partial line.
+            MemorySegment.copy(carry, 0, segment, ValueLayout.JAVA_BYTE, ALIGNMENT - carryLength, carryLength);
+            bounds[0] = segment.address() + ALIGNMENT - carryLength;
+            long dataEnd = segment.address() + ALIGNMENT + length;
+            if (block == blocks - 1) {
+                if (Segments.lastLineEnd(bounds[0], dataEnd) < dataEnd) {
+                    segment.set(ValueLayout.JAVA_BYTE, ALIGNMENT + length, (byte) '\n');
+                    dataEnd++;
+                }
+                bounds[1] = dataEnd;
+                carryLength = 0;
+            }
+            else {
+                bounds[1] = Segments.lastLineEnd(bounds[0], dataEnd);
+                carryLength = (int) (dataEnd - bounds[1]);
+                if (carryLength > carry.length) {
+                    failure = new IllegalStateException("Line longer than " + carry.length + " bytes");
+                    nextClaim = blocks;
+                    notifyAll();
+                    return false;
+                }
+                MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, bounds[1] - segment.address(), carry, 0, carryLength);
+            }
+            carried = block;
+            notifyAll();
+        }
+        return true;
+    }
+
+    private int slot(long block) {
+        return (int) (block % slots.length);
+    }
+
+    private void read() {
+        try {
+            while (true) {
+                long block;
+                MemorySegment segment;
+                synchronized (this) {
+                    block = nextRead;
+                    if (block >= blocks || failure != null) {
+                        return;
+                    }
+                    nextRead++;
+                    int slot = slot(block);
+                    // Wait for the worker of the block that last used this slot.
+                    while (released[slot] < block - slots.length && failure == null) {
+                        wait();
+                    }
+                    if (failure != null) {
+                        return;
+                    }
+                    ready[slot] = -1;
+                    segment = slots[slot];
+                }
+
+                long position = block * bufferSize;
+                int length = (int) Math.min(bufferSize, fileSize - position);
+                // O_DIRECT wants whole aligned blocks even at the end of the file, where fewer bytes are returned.
+                int requested = (int) Math.min(bufferSize, Math.ceilDiv(length, ALIGNMENT) * (long) ALIGNMENT);
+                ByteBuffer buffer = segment.asSlice(ALIGNMENT, requested).asByteBuffer();
+                while (buffer.position() < length) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new IOException("File truncated while reading at " + (position + buffer.position()));
+                    }
+                }
+
+                synchronized (this) {
+                    ready[slot(block)] = block;
+                    notifyAll();
+                }
+            }
+        }
+        catch (Throwable t) {
+            synchronized (this) {
+                if (failure == null) {
+                    failure = t;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits for the readers and releases the buffers, rethrowing any failure to read the file.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (failure == null && nextClaim < blocks) {
+                failure = new InterruptedException();
+            }
+            notifyAll();
+        }
+        for (Thread reader : readers) {
+            try {
+                reader.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        arena.close();
+        channel.close();
+        Throwable t;
+        synchronized (this) {
+            t = failure;
+        }
+        if (t instanceof IOException e) {
+            throw e;
+        }
+        if (t != null && !(t instanceof InterruptedException)) {
+            throw new IOException("Failed to read input", t);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+/**
+ * Counting histogram of the measurements of one station, with one bucket per possible value: temperatures are
+ * tenths of a degree in {@code [-999, 999]}, so 1999 buckets give exact percentiles. Histograms of the same station
+ * from different workers are merged by adding up the buckets. Each {@link Mode} is its own subclass, so that the
+ * per-line {@link #add(int)} has a single implementation in any run and stays free of mode checks.
+ */
+public abstract sealed class Histogram permits Histogram.Full, Histogram.Compact {
+
+    public enum Mode {
+        /**
+         * An int per bucket, 8 KB per station and worker.
+         */
+        FULL,
+
+        /**
+         * A char per bucket, 4 KB per station and worker, for inputs with many stations. A bucket reaching 65536
+         * carries into a separate int array allocated on first overflow, so counts stay exact.
+         */
+        COMPACT
+    }
+
+    static final int MIN_VALUE = -999;
+    static final int MAX_VALUE = 999;
+    static final int BUCKETS = MAX_VALUE - MIN_VALUE + 1;
+
+    public static Histogram create(Mode mode) {
+        return mode == Mode.FULL ? new Full() : new Compact();
+    }
+
+    public abstract Mode mode();
+
+    // Count a single measurement given in tenths of a degree.
+    public abstract void add(int value);
+
+    abstract long bucketCount(int bucket);
+
+    abstract void addToBucket(int bucket, long count);
+
+    // Add the counts of another histogram to this one.
+    public void merge(Histogram other) {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            long count = other.bucketCount(bucket);
+            if (count != 0) {
+                addToBucket(bucket, count);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of measurements with the given value in tenths of a degree.
+     */
+    public long count(int value) {
+        return bucketCount(value - MIN_VALUE);
+    }
+
+    /**
+     * Returns the {@code percentile}th percentile in tenths of a degree by the nearest-rank method, i.e. the smallest
+     * value such that at least {@code percentile} percent of the measurements are less than or equal to it.
+     */
+    public int percentile(double percentile) {
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            total += bucketCount(bucket);
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += bucketCount(bucket);
+            if (seen >= rank) {
+                return bucket + MIN_VALUE;
+            }
+        }
+        throw new IllegalStateException("Empty histogram");
+    }
+
+    static final class Full extends Histogram {
+        private final int[] counts = new int[BUCKETS];
+
+        @Override
+        public Mode mode() {
+            return Mode.FULL;
+        }
+
+        @Override
+        public void add(int value) {
+            counts[value - MIN_VALUE]++;
+        }
+
+        @Override
+        long bucketCount(int bucket) {
+            return counts[bucket];
+        }
+
+        @Override
+        void addToBucket(int bucket, long count) {
+            counts[bucket] += (int) count;
+        }
+    }
+
+    static final class Compact extends Histogram {
+        private final char[] counts = new char[BUCKETS];
+        // Multiples of 65536 per bucket.
+        private int[] overflows;
+
+        @Override
+        public Mode mode() {
+            return Mode.COMPACT;
+        }
+
+        @Override
+        public void add(int value) {
+            int bucket = value - MIN_VALUE;
+            if (++counts[bucket] == 0) {
+                overflow(bucket, 1);
+            }
+        }
+
+        @Override
+        long bucketCount(int bucket) {
+            long count = counts[bucket];
+            if (overflows != null) {
+                count += (long) overflows[bucket] << Character.SIZE;
+            }
+            return count;
+        }
+
+        @Override
+        void addToBucket(int bucket, long count) {
+            long total = counts[bucket] + count;
+            counts[bucket] = (char) total;
+            if (total > Character.MAX_VALUE) {
+                overflow(bucket, (int) (total >>> Character.SIZE));
+            }
+        }
+
+        private void overflow(int bucket, int carry) {
+            if (overflows == null) {
+                overflows = new int[BUCKETS];
+            }
+            overflows[bucket] += carry;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Resolves an input argument into the files to aggregate. The argument is either a file, a directory, standing for
+ * all regular files directly inside it, or a glob pattern such as {@code shards/2024-01-*.txt}. Files are returned
+ * sorted by path.
+ */
+public final class InputFiles {
+
+    private InputFiles() {
+    }
+
+    public static List<Path> resolve(String input) throws IOException {
+        if (!isGlob(input)) {
+            Path path = Path.of(input);
+            if (!Files.isDirectory(path)) {
+                return List.of(path);
+            }
+            try (Stream<Path> files = Files.list(path)) {
+                return files.filter(Files::isRegularFile).sorted().toList();
+            }
+        }
+
+        // Walk from the deepest directory without wildcards, no deeper than the pattern unless it contains "**".
+        Path pattern = Path.of(input);
+        Path base = pattern.getRoot() != null ? pattern.getRoot() : Path.of("");
+        int depth = pattern.getNameCount();
+        for (Path name : pattern) {
+            if (isGlob(name.toString())) {
+                break;
+            }
+            base = base.resolve(name);
+            depth--;
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input);
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(base, input.contains("**") ? Integer.MAX_VALUE : depth)) {
+            files = paths.filter(path -> matcher.matches(path) && Files.isRegularFile(path)).sorted().toList();
+        }
+        if (files.isEmpty()) {
+            throw new NoSuchFileException(input);
+        }
+        return files;
+    }
+
+    private static boolean isGlob(String input) {
+        return input.chars().anyMatch(c -> "*?[{".indexOf(c) >= 0);
+    }
+}
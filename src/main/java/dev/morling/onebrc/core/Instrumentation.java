@@ -0,0 +1,112 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Collects what the engine did during an aggregation, for {@link Aggregator.Builder#instrumentation}: input size,
+ * lines, per-phase durations, per-worker timings and the probe statistics of every worker's table. Nothing is counted
+ * in the parse loop; lines and probe lengths are derived from the final tables and timings are taken per segment and
+ * per phase, so an aggregation without instrumentation runs exactly the same code. Callers may add phases of their
+ * own, such as printing the result, before rendering the report with {@link #toJson()}.
+ */
+public final class Instrumentation {
+
+    private int files;
+    private long mappedBytes;
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private final List<WorkerStats> workers = new ArrayList<>();
+    private final List<TableStats> tables = new ArrayList<>();
+    private TableStats merged;
+
+    /**
+     * Adds {@code nanos} to the duration of the named phase.
+     */
+    public synchronized void phase(String name, long nanos) {
+        phaseNanos.merge(name, nanos, Long::sum);
+    }
+
+    synchronized void mapped(int files, long bytes) {
+        this.files += files;
+        this.mappedBytes += bytes;
+    }
+
+    synchronized void parsed(List<WorkerStats> workers, List<TableStats> tables) {
+        this.workers.addAll(workers);
+        this.tables.addAll(tables);
+    }
+
+    synchronized void merged(TableStats merged) {
+        this.merged = merged;
+    }
+
+    /**
+     * Renders the collected data as a single-line JSON object, durations in milliseconds.
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"files\":").append(files);
+        json.append(",\"mapped_bytes\":").append(mappedBytes);
+        json.append(",\"parsed_bytes\":").append(workers.stream().mapToLong(WorkerStats::bytes).sum());
+        json.append(",\"lines\":").append(tables.stream().mapToLong(TableStats::lines).sum());
+        json.append(",\"stations\":").append(merged == null ? 0 : merged.stations());
+        json.append(",\"phases_ms\":{");
+        String separator = "";
+        for (Map.Entry<String, Long> phase : phaseNanos.entrySet()) {
+            json.append(separator).append('"').append(phase.getKey()).append("\":").append(millis(phase.getValue()));
+            separator = ",";
+        }
+        json.append("},\"workers\":[");
+        for (int i = 0; i < workers.size(); i++) {
+            WorkerStats worker = workers.get(i);
+            json.append(i == 0 ? "" : ",");
+            json.append("{\"worker\":").append(worker.worker());
+            json.append(",\"segments\":").append(worker.segments());
+            json.append(",\"bytes\":").append(worker.bytes());
+            json.append(",\"busy_ms\":").append(millis(worker.busyNanos()));
+            json.append(",\"idle_ms\":").append(millis(worker.idleNanos()));
+            json.append(",\"merge_ms\":").append(millis(worker.mergeNanos()));
+            json.append(",\"table\":");
+            append(json, tables.get(i));
+            json.append('}');
+        }
+        json.append("],\"merged_table\":");
+        append(json, merged);
+        return json.append('}').toString();
+    }
+
+    private static void append(StringBuilder json, TableStats table) {
+        if (table == null) {
+            json.append("null");
+            return;
+        }
+        json.append("{\"stations\":").append(table.stations());
+        json.append(",\"lines\":").append(table.lines());
+        json.append(",\"displaced\":").append(table.displaced());
+        json.append(",\"mean_probes\":").append(String.format(Locale.ROOT, "%.3f", table.meanProbes()));
+        json.append(",\"max_probes\":").append(table.maxProbes());
+        json.append('}');
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import static dev.morling.onebrc.core.Memory.UNSAFE;
+
+/**
+ * Splits lines of the {@code <station>;<temperature>} format into a {@link Batch} of (name offset, name length,
+ * value offset) triples, so that the consumer runs one loop over many lines without any delimiter search of its own:
+ *
+ * <pre>
+ * LineTokenizer tokenizer = LineTokenizer.create();
+ * LineTokenizer.Batch batch = new LineTokenizer.Batch(1024);
+ * for (long offset = 0; offset &lt; data.byteSize();) {
+ *     offset = tokenizer.tokenize(data, offset, data.byteSize(), batch);
+ *     int[] tokens = batch.tokens();
+ *     for (int i = 0; i &lt; batch.lines() * 3; i += 3) {
+ *         long name = batch.base() + tokens[i]; // ...
+ *     }
+ * }
+ * </pre>
+ *
+ * {@link #vectorized()} compares whole vectors against {@code ';'} and {@code '\n'} and turns the resulting bitmask
+ * into delimiter positions, {@link #swar()} is the 4-byte SWAR loop of {@link SegmentParser} for CPUs without wide
+ * vectors. Both only work on native segments and produce the same triples.
+ */
+public abstract sealed class LineTokenizer permits LineTokenizer.Vectorized, LineTokenizer.Swar {
+
+    /**
+     * Returns the vectorized tokenizer if the CPU has vectors of at least 32 bytes, the SWAR one otherwise.
+     */
+    public static LineTokenizer create() {
+        return ByteVector.SPECIES_PREFERRED.vectorByteSize() >= 32 ? vectorized() : swar();
+    }
+
+    public static LineTokenizer vectorized() {
+        return new Vectorized(ByteVector.SPECIES_PREFERRED);
+    }
+
+    public static LineTokenizer swar() {
+        return new Swar();
+    }
+
+    /**
+     * Tokenizes the lines in {@code [offset, end)} of {@code data} into {@code batch}, up to its capacity, and returns
+     * the offset after the last tokenized line. {@code offset} must be the beginning of a line and {@code end} the
+     * byte after a {@code '\n'}.
+     */
+    public abstract long tokenize(MemorySegment data, long offset, long end, Batch batch);
+
+    /**
+     * The tokens of up to {@link #capacity()} lines, reused across calls to {@link #tokenize}.
+     */
+    public static final class Batch {
+        private final int[] tokens;
+        // Positions of all ';' and '\n' found by the vectorized tokenizer, with room for one vector past capacity.
+        private final int[] delimiters;
+        private int lines;
+        private long base;
+
+        public Batch(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("capacity must be positive: " + capacity);
+            }
+            this.tokens = new int[capacity * 3];
+            this.delimiters = new int[capacity * 2 + 64];
+        }
+
+        public int capacity() {
+            return tokens.length / 3;
+        }
+
+        /**
+         * Number of lines tokenized by the last call to {@link #tokenize}.
+         */
+        public int lines() {
+            return lines;
+        }
+
+        /**
+         * Offset of the first tokenized line in the segment, which all tokens are relative to.
+         */
+        public long base() {
+            return base;
+        }
+
+        /**
+         * Name offset, name length and value offset of each line, in {@code [0, 3 * lines())}.
+         */
+        public int[] tokens() {
+            return tokens;
+        }
+    }
+
+    static final class Vectorized extends LineTokenizer {
+        private final VectorSpecies<Byte> species;
+
+        Vectorized(VectorSpecies<Byte> species) {
+            this.species = species;
+        }
+
+        @Override
+        public long tokenize(MemorySegment data, long offset, long end, Batch batch) {
+            int[] delimiters = batch.delimiters;
+            int limit = batch.capacity() * 2;
+            int lanes = species.length();
+            int count = 0;
+            long position = offset;
+
+            // Collect the positions of all delimiters, a whole vector at a time.
+            while (position + lanes <= end && count < limit) {
+                var bytes = ByteVector.fromMemorySegment(species, data, position, ByteOrder.nativeOrder());
+                long mask = bytes.compare(VectorOperators.EQ, ';').or(bytes.compare(VectorOperators.EQ, '\n')).toLong();
+                int relative = (int) (position - offset);
+                while (mask != 0) {
+                    delimiters[count++] = relative + Long.numberOfTrailingZeros(mask);
+                    mask &= mask - 1;
+                }
+                position += lanes;
+            }
+            for (; position < end && count < limit; position++) {
+                byte b = data.get(ValueLayout.JAVA_BYTE, position);
+                if (b == ';' || b == '\n') {
+                    delimiters[count++] = (int) (position - offset);
+                }
+            }
+
+            // Names cannot contain either delimiter, so they alternate and each pair is one complete line.
+            int lines = Math.min(count >>> 1, batch.capacity());
+            int[] tokens = batch.tokens;
+            int lineStart = 0;
+            for (int i = 0; i < lines; i++) {
+                int semicolon = delimiters[2 * i];
+                tokens[3 * i] = lineStart;
+                tokens[3 * i + 1] = semicolon - lineStart;
+                tokens[3 * i + 2] = semicolon + 1;
+                lineStart = delimiters[2 * i + 1] + 1;
+            }
+            batch.lines = lines;
+            batch.base = offset;
+            return offset + lineStart;
+        }
+    }
+
+    static final class Swar extends LineTokenizer {
+        private static final int SEMICOLONS = 0x3B3B3B3B;
+        private static final int NEW_LINES = 0x0A0A0A0A;
+
+        @Override
+        public long tokenize(MemorySegment data, long offset, long end, Batch batch) {
+            int[] tokens = batch.tokens;
+            int capacity = batch.capacity();
+            long base = data.address() + offset;
+            long scanPtr = base;
+            long endPtr = data.address() + end;
+            int lines = 0;
+            while (scanPtr < endPtr && lines < capacity) {
+                long nameAddress = scanPtr;
+
+                // Names are at least one byte long, scan for ';' from the second one, 4 bytes at a time.
+                scanPtr++;
+                while (true) {
+                    int match = UNSAFE.getInt(scanPtr) ^ SEMICOLONS;
+                    match = (match - 0x01010101) & ~match & 0x80808080;
+                    if (match != 0) {
+                        scanPtr += Integer.numberOfTrailingZeros(match) >>> 3;
+                        break;
+                    }
+                    scanPtr += 4;
+                }
+                long valueAddress = scanPtr + 1;
+
+                // Values are 3 to 5 bytes long, so the '\n' is in the word starting 2 bytes into the value, unless that
+                // word would extend past end, e.g. for a short value on the last line.
+                long newLine = valueAddress + 2;
+                if (newLine + 4 <= endPtr) {
+                    int match = UNSAFE.getInt(newLine) ^ NEW_LINES;
+                    match = (match - 0x01010101) & ~match & 0x80808080;
+                    newLine += Integer.numberOfTrailingZeros(match) >>> 3;
+                }
+                else {
+                    while (UNSAFE.getByte(newLine) != '\n') {
+                        newLine++;
+                    }
+                }
+
+                tokens[3 * lines] = (int) (nameAddress - base);
+                tokens[3 * lines + 1] = (int) (scanPtr - nameAddress);
+                tokens[3 * lines + 2] = (int) (valueAddress - base);
+                lines++;
+                scanPtr = newLine + 1;
+            }
+            batch.lines = lines;
+            batch.base = offset;
+            return offset + (scanPtr - base);
+        }
+    }
+}
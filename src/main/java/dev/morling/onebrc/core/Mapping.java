@@ -0,0 +1,95 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import static dev.morling.onebrc.core.Memory.UNSAFE;
+
+/**
+ * How the engine maps its input files into memory.
+ */
+public enum Mapping {
+
+    /**
+     * {@link FileChannel#map} as is: every 4 KiB page is faulted in by the worker that first reads it, and the kernel
+     * reads ahead as it sees fit.
+     */
+    PLAIN,
+
+    /**
+     * Tells the kernel that the mapping is read sequentially and soon ({@code MADV_SEQUENTIAL},
+     * {@code MADV_WILLNEED}), so that it reads ahead aggressively and drops pages behind the readers, and asks for
+     * transparent huge pages ({@code MADV_HUGEPAGE}). The latter only takes effect for file mappings with
+     * {@code CONFIG_READ_ONLY_THP_FOR_FS} and {@code /sys/kernel/mm/transparent_hugepage/enabled} not set to
+     * {@code never}. Without {@code madvise}, e.g. on other operating systems, the same as {@link #PLAIN}.
+     */
+    ADVISED,
+
+    /**
+     * {@link #ADVISED}, plus a helper thread that touches every page of the input ahead of the segments claimed by the
+     * workers, see {@link Prefaulter}, so that the workers find their pages mapped instead of faulting them in
+     * themselves.
+     */
+    PREFAULT;
+
+    // From <sys/mman.h> on Linux.
+    private static final int MADV_SEQUENTIAL = 2;
+    private static final int MADV_WILLNEED = 3;
+    private static final int MADV_HUGEPAGE = 14;
+
+    MemorySegment map(FileChannel channel, long offset, long size, Arena arena) throws IOException {
+        MemorySegment segment = channel.map(MapMode.READ_ONLY, offset, size, arena);
+        if (this != PLAIN) {
+            advise(segment.address(), size, MADV_SEQUENTIAL);
+            advise(segment.address(), size, MADV_HUGEPAGE);
+            advise(segment.address(), size, MADV_WILLNEED);
+        }
+        return segment;
+    }
+
+    boolean prefaults() {
+        return this == PREFAULT;
+    }
+
+    // Advice is best effort only, failures are ignored.
+    private static void advise(long address, long size, int advice) {
+        if (Madvise.HANDLE == null) {
+            return;
+        }
+        // madvise() wants a page-aligned start, which mappings at an unaligned file offset are not.
+        long alignedAddress = address & -UNSAFE.pageSize();
+        try {
+            int ignored = (int) Madvise.HANDLE.invokeExact(MemorySegment.ofAddress(alignedAddress), size + (address - alignedAddress), advice);
+        }
+        catch (Throwable e) {
+            // keep the mapping as it is
+        }
+    }
+
+    // Looked up on first use only, so that PLAIN does not pay for linking the foreign function API.
+    private static final class Madvise {
+        static final MethodHandle HANDLE = Native.lookup("madvise",
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT));
+    }
+}
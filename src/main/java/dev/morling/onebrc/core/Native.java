@@ -0,0 +1,47 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Linux C library functions called through the foreign function API. The first lookup links the API itself and
+ * takes a few hundred milliseconds, so callers only look functions up when they are actually going to use them.
+ */
+final class Native {
+
+    private Native() {
+    }
+
+    /**
+     * Returns a handle for the C library function {@code name}, or {@code null} if not running on Linux or the
+     * function cannot be found.
+     */
+    static MethodHandle lookup(String name, FunctionDescriptor descriptor) {
+        if (!System.getProperty("os.name").startsWith("Linux")) {
+            return null;
+        }
+        try {
+            Linker linker = Linker.nativeLinker();
+            return linker.defaultLookup().find(name).map(address -> linker.downcallHandle(address, descriptor)).orElse(null);
+        }
+        catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.stream.Stream;
+
+/**
+ * The NUMA nodes of this machine and the CPUs of each that this process may run on, as read from
+ * {@code /sys/devices/system/node} and {@code /proc/self/status}, so that {@code numactl --physcpubind} or
+ * {@code taskset} restrictions are respected. Nodes without any allowed CPU are left out; without NUMA information,
+ * e.g. on other operating systems, there is one node with all processors.
+ */
+public final class NumaTopology {
+
+    private static final Path NODES = Path.of("/sys/devices/system/node");
+    private static final Path STATUS = Path.of("/proc/self/status");
+
+    private final int[][] cpus;
+
+    private NumaTopology(int[][] cpus) {
+        this.cpus = cpus;
+    }
+
+    /**
+     * A topology with the given CPUs per node, for machines whose {@code /sys} does not tell the whole story.
+     */
+    public static NumaTopology of(int[]... cpusPerNode) {
+        if (cpusPerNode.length == 0) {
+            throw new IllegalArgumentException("At least one node expected");
+        }
+        return new NumaTopology(cpusPerNode.clone());
+    }
+
+    public static NumaTopology detect() {
+        try {
+            BitSet allowed = null;
+            if (Files.exists(STATUS)) {
+                for (String line : Files.readAllLines(STATUS)) {
+                    if (line.startsWith("Cpus_allowed_list:")) {
+                        allowed = parseCpuList(line.substring(line.indexOf(':') + 1));
+                    }
+                }
+            }
+            List<int[]> nodes = new ArrayList<>();
+            if (Files.isDirectory(NODES)) {
+                List<Path> nodeDirectories;
+                try (Stream<Path> paths = Files.list(NODES)) {
+                    nodeDirectories = paths.filter(path -> path.getFileName().toString().matches("node\\d+"))
+                            .sorted((a, b) -> Integer.compare(nodeNumber(a), nodeNumber(b)))
+                            .toList();
+                }
+                for (Path nodeDirectory : nodeDirectories) {
+                    BitSet nodeCpus = parseCpuList(Files.readString(nodeDirectory.resolve("cpulist")));
+                    if (allowed != null) {
+                        nodeCpus.and(allowed);
+                    }
+                    if (!nodeCpus.isEmpty()) {
+                        nodes.add(nodeCpus.stream().toArray());
+                    }
+                }
+            }
+            if (!nodes.isEmpty()) {
+                return new NumaTopology(nodes.toArray(new int[0][]));
+            }
+            if (allowed != null && !allowed.isEmpty()) {
+                return new NumaTopology(new int[][]{ allowed.stream().toArray() });
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            // fall back to a single node below
+        }
+        int[] all = new int[Runtime.getRuntime().availableProcessors()];
+        Arrays.setAll(all, i -> i);
+        return new NumaTopology(new int[][]{ all });
+    }
+
+    public int nodes() {
+        return cpus.length;
+    }
+
+    int[] cpus(int node) {
+        return cpus[node];
+    }
+
+    /**
+     * Assigns {@code workers} to the nodes in contiguous blocks, proportionally to the number of CPUs of each node,
+     * and returns the node of each worker.
+     */
+    int[] place(int workers) {
+        int totalCpus = 0;
+        for (int[] nodeCpus : cpus) {
+            totalCpus += nodeCpus.length;
+        }
+        int[] nodeOfWorker = new int[workers];
+        int worker = 0;
+        int cpusBefore = 0;
+        for (int node = 0; node < cpus.length; node++) {
+            cpusBefore += cpus[node].length;
+            int blockEnd = (int) ((long) workers * cpusBefore / totalCpus);
+            for (; worker < blockEnd; worker++) {
+                nodeOfWorker[worker] = node;
+            }
+        }
+        return nodeOfWorker;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(" ");
+        for (int node = 0; node < cpus.length; node++) {
+            joiner.add("node" + node + "=" + Arrays.toString(cpus[node]));
+        }
+        return joiner.toString();
+    }
+
+    // Parses the kernel's CPU list format, e.g. "0-3,8-11".
+    static BitSet parseCpuList(String list) {
+        BitSet cpuSet = new BitSet();
+        for (String range : list.trim().split(",")) {
+            if (range.isEmpty()) {
+                continue;
+            }
+            int dash = range.indexOf('-');
+            if (dash < 0) {
+                cpuSet.set(Integer.parseInt(range));
+            }
+            else {
+                cpuSet.set(Integer.parseInt(range.substring(0, dash)), Integer.parseInt(range.substring(dash + 1)) + 1);
+            }
+        }
+        return cpuSet;
+    }
+
+    private static int nodeNumber(Path nodeDirectory) {
+        return Integer.parseInt(nodeDirectory.getFileName().toString().substring("node".length()));
+    }
+}
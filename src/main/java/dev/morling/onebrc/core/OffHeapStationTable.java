@@ -0,0 +1,194 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.lang.foreign.Arena;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static dev.morling.onebrc.core.Memory.BYTE_ARRAY_OFFSET;
+import static dev.morling.onebrc.core.Memory.UNSAFE;
+
+/**
+ * Variant of {@link StationTable} that keeps all state in native memory: no object is allocated per station, and a
+ * lookup touches one int slot plus one entry. Entries are packed back to back in insertion order, each being
+ *
+ * <pre>
+ * 0  int  hash
+ * 4  int  name length
+ * 8  int  min
+ * 12 int  max
+ * 16 long sum
+ * 24 long count
+ * 32      name bytes, zero-padded to a multiple of 8
+ * </pre>
+ *
+ * The open-addressing slots hold the offset of their entry. Owned by a single worker thread, like
+ * {@link StationTable}; must be closed to release its memory.
+ */
+public final class OffHeapStationTable implements AutoCloseable {
+
+    private static final int HASH = 0;
+    private static final int LENGTH = 4;
+    private static final int MIN = 8;
+    private static final int MAX = 12;
+    private static final int SUM = 16;
+    private static final int COUNT = 24;
+    private static final int NAME = 32;
+
+    // Room for about 20,000 entries of typical length before the first resize.
+    private static final long INITIAL_ENTRIES_SIZE = 1 << 20;
+
+    private final Arena arena = Arena.ofShared();
+    private final long slots;
+    private long entries;
+    private long entriesCapacity;
+    // Offset 0 marks an empty slot, so the first entry starts after it.
+    private long entriesSize = Long.BYTES;
+    private int size;
+
+    public OffHeapStationTable() {
+        slots = arena.allocate((long) StationTable.CAPACITY * Integer.BYTES, Long.BYTES).address();
+        entriesCapacity = INITIAL_ENTRIES_SIZE;
+        entries = arena.allocate(entriesCapacity, Long.BYTES).address();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Accumulates {@code value} for the name of {@code nameLength} bytes at {@code nameAddress}, hashed with
+     * {@link StationTable#hash(byte[])}.
+     */
+    public void add(long nameAddress, int nameLength, int hash, int value) {
+        long entry = find(nameAddress, nameLength, hash);
+        UNSAFE.putInt(entry + MIN, Math.min(UNSAFE.getInt(entry + MIN), value));
+        UNSAFE.putInt(entry + MAX, Math.max(UNSAFE.getInt(entry + MAX), value));
+        UNSAFE.putLong(entry + SUM, UNSAFE.getLong(entry + SUM) + value);
+        UNSAFE.putLong(entry + COUNT, UNSAFE.getLong(entry + COUNT) + 1);
+    }
+
+    /**
+     * Accumulates all stations of {@code other} into this table, reading names and stats straight from its entries.
+     */
+    public void merge(OffHeapStationTable other) {
+        long offset = Long.BYTES;
+        while (offset < other.entriesSize) {
+            long source = other.entries + offset;
+            int length = UNSAFE.getInt(source + LENGTH);
+            long target = find(source + NAME, length, UNSAFE.getInt(source + HASH));
+            UNSAFE.putInt(target + MIN, Math.min(UNSAFE.getInt(target + MIN), UNSAFE.getInt(source + MIN)));
+            UNSAFE.putInt(target + MAX, Math.max(UNSAFE.getInt(target + MAX), UNSAFE.getInt(source + MAX)));
+            UNSAFE.putLong(target + SUM, UNSAFE.getLong(target + SUM) + UNSAFE.getLong(source + SUM));
+            UNSAFE.putLong(target + COUNT, UNSAFE.getLong(target + COUNT) + UNSAFE.getLong(source + COUNT));
+            offset += entrySize(length);
+        }
+    }
+
+    /**
+     * Accumulates all stations of this table into {@code target}, keyed by the decoded name.
+     */
+    public void putInto(Map<String, Stats> target) {
+        long offset = Long.BYTES;
+        while (offset < entriesSize) {
+            long entry = entries + offset;
+            int length = UNSAFE.getInt(entry + LENGTH);
+            byte[] name = new byte[length];
+            UNSAFE.copyMemory(null, entry + NAME, name, BYTE_ARRAY_OFFSET, length);
+            Stats stats = new Stats(UNSAFE.getInt(entry + MIN), UNSAFE.getInt(entry + MAX),
+                    UNSAFE.getLong(entry + SUM), UNSAFE.getLong(entry + COUNT));
+            Stats current = target.putIfAbsent(new String(name, StandardCharsets.UTF_8), stats);
+            if (current != null) {
+                current.merge(stats);
+            }
+            offset += entrySize(length);
+        }
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private long find(long nameAddress, int nameLength, int hash) {
+        int tableIndex = StationTable.index(hash);
+        while (true) {
+            long slot = slots + (long) tableIndex * Integer.BYTES;
+            int offset = UNSAFE.getInt(slot);
+            if (offset == 0) {
+                return insert(slot, nameAddress, nameLength, hash);
+            }
+            long entry = entries + offset;
+            if (UNSAFE.getInt(entry + HASH) == hash && matches(entry, nameAddress, nameLength)) {
+                return entry;
+            }
+            // Collision, try next.
+            tableIndex = (tableIndex + 1) & (StationTable.CAPACITY - 1);
+        }
+    }
+
+    private long insert(long slot, long nameAddress, int nameLength, int hash) {
+        if (++size > StationTable.MAX_SIZE) {
+            throw new IllegalStateException("Too many distinct stations, at most " + StationTable.MAX_SIZE + " are supported");
+        }
+        long entrySize = entrySize(nameLength);
+        if (entriesSize + entrySize > entriesCapacity) {
+            grow();
+        }
+        long entry = entries + entriesSize;
+        UNSAFE.putInt(entry + HASH, hash);
+        UNSAFE.putInt(entry + LENGTH, nameLength);
+        UNSAFE.putInt(entry + MIN, Integer.MAX_VALUE);
+        UNSAFE.putInt(entry + MAX, Integer.MIN_VALUE);
+        UNSAFE.copyMemory(nameAddress, entry + NAME, nameLength);
+        UNSAFE.putInt(slot, (int) entriesSize);
+        entriesSize += entrySize;
+        return entry;
+    }
+
+    // Superseded regions stay allocated until close, doubling bounds them by the size of the last one.
+    private void grow() {
+        long capacity = entriesCapacity * 2;
+        long grown = arena.allocate(capacity, Long.BYTES).address();
+        UNSAFE.copyMemory(entries, grown, entriesSize);
+        entries = grown;
+        entriesCapacity = capacity;
+    }
+
+    private static long entrySize(int nameLength) {
+        return NAME + ((nameLength + Long.BYTES - 1) & -Long.BYTES);
+    }
+
+    private static boolean matches(long entry, long address, int length) {
+        if (UNSAFE.getInt(entry + LENGTH) != length) {
+            return false;
+        }
+        long name = entry + NAME;
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            if (UNSAFE.getLong(name + i) != UNSAFE.getLong(address + i)) {
+                return false;
+            }
+        }
+        for (; i < length; i++) {
+            if (UNSAFE.getByte(name + i) != UNSAFE.getByte(address + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
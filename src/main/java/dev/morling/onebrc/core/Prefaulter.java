@@ -0,0 +1,117 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static dev.morling.onebrc.core.Memory.UNSAFE;
+
+/**
+ * A {@link SegmentScheduler} that pre-faults the input ahead of the workers on a helper thread. It keeps track of the
+ * part of the mapped ranges no worker has claimed yet and the helper reads one byte per page of it, lowest address
+ * first, {@value #CHUNK_SIZE} bytes at a time. With the fixed and adaptive scheduling, which hand out segments in
+ * address order, that is the next segment to be claimed, so that the workers find their pages mapped instead of
+ * taking the page faults and waits for the disk themselves; a segment a worker claims is never touched again by the
+ * helper. With static scheduling every segment is claimed at the start and there is nothing left to pre-fault. Must be
+ * closed once parsing is done and before the input is unmapped.
+ */
+final class Prefaulter implements SegmentScheduler, AutoCloseable {
+
+    private static final long CHUNK_SIZE = 2 * 1024 * 1024;
+
+    private final SegmentScheduler scheduler;
+    // Start and end of the ranges neither claimed by a worker nor touched by the helper, guarded by this.
+    private final TreeMap<Long, Long> ahead = new TreeMap<>();
+    private final Thread helper;
+    private volatile boolean closed;
+    // Keeps the JIT from dropping the page reads.
+    private volatile int sink;
+
+    /**
+     * {@code ranges} holds the start and end address of each mapped range {@code scheduler} hands out segments of.
+     */
+    Prefaulter(SegmentScheduler scheduler, long... ranges) {
+        this.scheduler = scheduler;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] < ranges[i + 1]) {
+                ahead.put(ranges[i], ranges[i + 1]);
+            }
+        }
+        this.helper = Thread.ofPlatform().daemon().name("prefaulter").start(this::run);
+    }
+
+    @Override
+    public boolean next(int worker, long[] bounds) {
+        if (!scheduler.next(worker, bounds)) {
+            return false;
+        }
+        remove(bounds[0], bounds[1]);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            helper.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long pageSize = UNSAFE.pageSize();
+        int sum = 0;
+        while (!closed) {
+            long start;
+            long end;
+            synchronized (this) {
+                Map.Entry<Long, Long> first = ahead.firstEntry();
+                if (first == null) {
+                    break;
+                }
+                start = first.getKey();
+                end = Math.min(start + CHUNK_SIZE, first.getValue());
+                remove(start, end);
+            }
+            // Mappings start at a page boundary, so the page of the chunk's first byte is part of the mapping.
+            for (long page = start & -pageSize; page < end; page += pageSize) {
+                sum += UNSAFE.getByte(page);
+            }
+        }
+        sink = sum;
+    }
+
+    // Removes [start, end) from the ranges ahead, which may have been split up by chunks the helper already took.
+    private synchronized void remove(long start, long end) {
+        Map.Entry<Long, Long> before = ahead.lowerEntry(start);
+        if (before != null && before.getValue() > start) {
+            ahead.put(before.getKey(), start);
+            if (before.getValue() > end) {
+                ahead.put(end, before.getValue());
+            }
+        }
+        NavigableMap<Long, Long> within = ahead.subMap(start, true, end, false);
+        Map.Entry<Long, Long> last = within.lastEntry();
+        if (last != null && last.getValue() > end) {
+            ahead.put(end, last.getValue());
+        }
+        within.clear();
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+/**
+ * Settings for reading input files with positional reads into a ring of direct buffers instead of memory mapping
+ * them, see {@link Aggregator.Builder#reads}. Meant for inputs larger than the RAM, where a mapping keeps evicting
+ * pages that are still to be parsed while the page cache fills up.
+ *
+ * @param queueDepth number of reads in flight at any time, each on its own reader thread
+ * @param bufferSize bytes per read and buffer, rounded up to a multiple of 4 KiB
+ * @param direct whether to bypass the page cache with {@code O_DIRECT} where the file system supports it
+ */
+public record ReadPipeline(int queueDepth, int bufferSize, boolean direct) {
+
+    public static final int DEFAULT_QUEUE_DEPTH = 4;
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024 * 1024;
+
+    public ReadPipeline {
+        if (queueDepth < 1) {
+            throw new IllegalArgumentException("queueDepth must be positive: " + queueDepth);
+        }
+        if (bufferSize < 64 * 1024 || bufferSize > 1024 * 1024 * 1024) {
+            throw new IllegalArgumentException("bufferSize must be between 64 KiB and 1 GiB: " + bufferSize);
+        }
+    }
+
+    public static ReadPipeline defaults() {
+        return new ReadPipeline(DEFAULT_QUEUE_DEPTH, DEFAULT_BUFFER_SIZE, false);
+    }
+}
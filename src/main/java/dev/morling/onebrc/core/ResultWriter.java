@@ -0,0 +1,123 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Writes a {@link StationTable} in the challenge output format, {@code {Abha=-23.0/18.0/59.2, ...}} and a line feed,
+ * without a {@code TreeMap} or any {@code String}: the entries are sorted by their UTF-8 names as they are, the
+ * fixed-point values are formatted straight into one byte array and the whole output goes out in a single channel
+ * write. The output is byte for byte that of printing the map returned by {@link Aggregator#aggregate(java.util.List)}.
+ */
+public final class ResultWriter {
+
+    // ", " + "=" + three values of at most 20 digits, sign and '.' + two '/'.
+    private static final int MAX_ENTRY_OVERHEAD = 2 + 1 + 3 * 22 + 2;
+
+    private ResultWriter() {
+    }
+
+    public static void write(StationTable table, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = format(table);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public static ByteBuffer format(StationTable table) {
+        StationTable.Entry[] sorted = new StationTable.Entry[table.size];
+        int count = 0;
+        int capacity = 3;
+        for (StationTable.Entry entry : table.entries) {
+            if (entry != null) {
+                sorted[count++] = entry;
+                capacity += entry.name.length + MAX_ENTRY_OVERHEAD;
+            }
+        }
+        Arrays.sort(sorted, 0, count, (a, b) -> compare(a.name, b.name));
+
+        byte[] output = new byte[capacity];
+        int position = 0;
+        output[position++] = '{';
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                output[position++] = ',';
+                output[position++] = ' ';
+            }
+            StationTable.Entry entry = sorted[i];
+            System.arraycopy(entry.name, 0, output, position, entry.name.length);
+            position += entry.name.length;
+            output[position++] = '=';
+            Stats stats = entry.stats;
+            position = putTenths(output, position, stats.min);
+            output[position++] = '/';
+            // Rounded exactly as Stats.toString() does.
+            position = putTenths(output, position, Math.round(((double) stats.sum) / 10.0 / stats.count * 10.0));
+            output[position++] = '/';
+            position = putTenths(output, position, stats.max);
+        }
+        output[position++] = '}';
+        output[position++] = '\n';
+        return ByteBuffer.wrap(output, 0, position);
+    }
+
+    /**
+     * Compares two UTF-8 names in the order of {@link String#compareTo}, which is that of their UTF-16 code units.
+     * That is unsigned byte order, except that the characters from U+E000 to U+FFFF, with lead bytes {@code 0xEE}
+     * and {@code 0xEF}, come after the supplementary characters, with lead bytes {@code 0xF0} to {@code 0xF4}, whose
+     * UTF-16 surrogates start at U+D800.
+     */
+    static int compare(byte[] a, byte[] b) {
+        int i = Arrays.mismatch(a, b);
+        if (i < 0) {
+            return 0;
+        }
+        if (i == a.length || i == b.length) {
+            return a.length - b.length;
+        }
+        return Integer.compare(weight(a[i]), weight(b[i]));
+    }
+
+    private static int weight(byte b) {
+        int unsigned = b & 0xFF;
+        return unsigned == 0xEE || unsigned == 0xEF ? unsigned + 0x10 : unsigned;
+    }
+
+    // Writes tenths of a degree as e.g. "-12.3" or "0.5".
+    private static int putTenths(byte[] output, int position, long tenths) {
+        if (tenths < 0) {
+            output[position++] = '-';
+            tenths = -tenths;
+        }
+        long whole = tenths / 10;
+        int digits = 1;
+        for (long rest = whole / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = digits - 1; i >= 0; i--) {
+            output[position + i] = (byte) ('0' + whole % 10);
+            whole /= 10;
+        }
+        position += digits;
+        output[position++] = '.';
+        output[position++] = (byte) ('0' + tenths % 10);
+        return position;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+/**
+ * The segment scheduling strategies of the engine.
+ */
+public enum Scheduling {
+
+    /**
+     * One equally sized segment per worker.
+     */
+    STATIC {
+        @Override
+        SegmentScheduler create(long start, long end, int workers) {
+            return SegmentScheduler.staticSplit(start, end, workers);
+        }
+    },
+
+    /**
+     * 16 MiB segments handed out in file order.
+     */
+    FIXED {
+        @Override
+        SegmentScheduler create(long start, long end, int workers) {
+            return SegmentScheduler.fixed(start, end, 16 * MIB);
+        }
+    },
+
+    /**
+     * Segments of at most 256 MiB shrinking to 1 MiB towards the end of the input.
+     */
+    ADAPTIVE {
+        @Override
+        SegmentScheduler create(long start, long end, int workers) {
+            return SegmentScheduler.adaptive(start, end, workers, MIB, 256 * MIB);
+        }
+    };
+
+    private static final long MIB = 1024 * 1024;
+
+    abstract SegmentScheduler create(long start, long end, int workers);
+}
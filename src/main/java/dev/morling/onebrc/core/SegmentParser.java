@@ -0,0 +1,149 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.lang.foreign.MemorySegment;
+
+import static dev.morling.onebrc.core.Memory.UNSAFE;
+
+/**
+ * The parse loop of {@code CalculateAverage_thomaswue}: scans for the {@code ';'} delimiter four bytes at a time
+ * while hashing the name, parses the fixed-point temperature with {@link Temperatures} and accumulates it into a
+ * {@link StationTable}.
+ * The delimiter test is an exact SWAR zero-byte search, so multi-byte UTF-8 names cannot produce false matches.
+ * The name hash rotates before each XOR, see {@link StationTable#hash(byte[])}, so that names built from repeated
+ * words do not all collide.
+ * Alternatively, the lines are tokenized a batch at a time by a {@link LineTokenizer} and accumulated in a separate
+ * loop, see {@link Aggregator.Builder#tokenizer}.
+ */
+public final class SegmentParser {
+
+    private static final int SEMICOLONS = 0x3B3B3B3B;
+
+    private SegmentParser() {
+    }
+
+    /**
+     * Parses all lines in {@code [start, end)}. {@code start} must be the beginning of a line and {@code end} the
+     * byte after a {@code '\n'}.
+     */
+    public static void parse(long start, long end, StationTable table) {
+        scan(start, end, (nameAddress, nameLength, hash, temperature) -> table.find(nameAddress, nameLength, hash).add(temperature));
+    }
+
+    /**
+     * Parses all lines in {@code [start, end)} like {@link #parse(long, long, StationTable)}, but has {@code tokenizer}
+     * split them into {@code batch} first, so that the loop accumulating them runs over whole batches without a
+     * delimiter search of its own.
+     */
+    public static void parse(long start, long end, StationTable table, LineTokenizer tokenizer, LineTokenizer.Batch batch) {
+        MemorySegment memory = AllMemory.SEGMENT;
+        long offset = start;
+        while (offset < end) {
+            offset = tokenizer.tokenize(memory, offset, end, batch);
+            int[] tokens = batch.tokens();
+            long base = batch.base();
+            for (int i = 0, last = 3 * batch.lines(); i < last; i += 3) {
+                long nameAddress = base + tokens[i];
+                int nameLength = tokens[i + 1];
+                int number = Temperatures.parse(Temperatures.read(base + tokens[i + 2], end));
+                table.find(nameAddress, nameLength, hash(nameAddress, nameLength)).add(number);
+            }
+        }
+    }
+
+    /**
+     * Dictionary-encodes all lines in {@code [start, end)}: writes the id of each line's station in {@code dictionary}
+     * as an int to {@code idsAddress} and its temperature in tenths of a degree as a short to {@code tempsAddress},
+     * advancing both per line. All stations must already be contained in {@code dictionary}.
+     */
+    public static void encode(long start, long end, StationTable dictionary, long idsAddress, long tempsAddress) {
+        scan(start, end, new RowSink() {
+            long ids = idsAddress;
+            long temps = tempsAddress;
+
+            @Override
+            public void accept(long nameAddress, int nameLength, int hash, int temperature) {
+                UNSAFE.putInt(ids, dictionary.id(nameAddress, nameLength, hash));
+                UNSAFE.putShort(temps, (short) temperature);
+                ids += Integer.BYTES;
+                temps += Short.BYTES;
+            }
+        });
+    }
+
+    // The hash computed by scan, see StationTable#hash(byte[]), for a name whose ';' follows it.
+    private static int hash(long nameAddress, int nameLength) {
+        int hash = UNSAFE.getByte(nameAddress) << 19;
+        for (int i = 1; i <= nameLength; i += 4) {
+            int word = UNSAFE.getInt(nameAddress + i);
+            int remaining = nameLength - i;
+            hash = Integer.rotateLeft(hash, 5) ^ (remaining >= 4 ? word : word & ((1 << (remaining << 3)) - 1));
+        }
+        return hash;
+    }
+
+    // All of the address space, for the tokenizers which work on segments. Only created when the batched parse is
+    // used, as it takes a restricted method.
+    private static final class AllMemory {
+        static final MemorySegment SEGMENT = MemorySegment.NULL.reinterpret(Long.MAX_VALUE);
+    }
+
+    // Receives each parsed line: the address and length of its name, the name's hash and the temperature in tenths.
+    @FunctionalInterface
+    private interface RowSink {
+        void accept(long nameAddress, int nameLength, int hash, int temperature);
+    }
+
+    // The scan shared by parse and encode, which only differ in what they do with each line.
+    private static void scan(long start, long end, RowSink sink) {
+        long scanPtr = start;
+        while (scanPtr < end) {
+            long nameAddress = scanPtr;
+            // Seed the hash with the first byte, which ends up in the top byte for names of up to four bytes.
+            int hash = UNSAFE.getByte(scanPtr) << 19;
+            scanPtr++;
+
+            // Scan for ';' delimiter, always 4 bytes at a time.
+            while (true) {
+                int nextVal = UNSAFE.getInt(scanPtr);
+                int match = nextVal ^ SEMICOLONS;
+                match = (match - 0x01010101) & ~match & 0x80808080;
+                if (match != 0) {
+                    int position = Integer.numberOfTrailingZeros(match) >>> 3;
+                    hash = Integer.rotateLeft(hash, 5) ^ (nextVal & ((1 << (position << 3)) - 1));
+                    scanPtr += position + 1;
+                    break;
+                }
+                scanPtr += 4;
+                hash = Integer.rotateLeft(hash, 5) ^ nextVal;
+            }
+
+            // Save length of name for later.
+            int nameLength = (int) (scanPtr - nameAddress - 1);
+
+            // Parse number.
+            long word = Temperatures.read(scanPtr, end);
+            int number = Temperatures.parse(word);
+            scanPtr += Temperatures.length(word);
+
+            sink.accept(nameAddress, nameLength, hash, number);
+
+            // Skip new line.
+            scanPtr++;
+        }
+    }
+}
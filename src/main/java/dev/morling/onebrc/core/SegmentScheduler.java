@@ -0,0 +1,130 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out line-aligned segments of the input to the workers of an {@link Aggregator}. Implementations are
+ * thread-safe; every segment is claimed by exactly one worker.
+ */
+public interface SegmentScheduler {
+
+    /**
+     * Claims the next segment for {@code worker}, storing its start and end address in {@code bounds[0]} and
+     * {@code bounds[1]}. Returns {@code false} once there is nothing left for this worker.
+     */
+    boolean next(int worker, long[] bounds);
+
+    /**
+     * One segment per worker, split up front as in {@code CalculateAverage_thomaswue.getSegments}.
+     */
+    static SegmentScheduler staticSplit(long start, long end, int workers) {
+        long[] segments = Segments.split(start, end, workers);
+        boolean[] claimed = new boolean[workers];
+        return (worker, bounds) -> {
+            // Only ever touched by the worker itself.
+            if (claimed[worker]) {
+                return false;
+            }
+            claimed[worker] = true;
+            bounds[0] = segments[worker];
+            bounds[1] = segments[worker + 1];
+            return true;
+        };
+    }
+
+    /**
+     * Segments of a fixed size taken from a shared cursor, as in {@code CalculateAverage_artsiomkorzun}.
+     */
+    static SegmentScheduler fixed(long start, long end, long segmentSize) {
+        return adaptive(start, end, 1, segmentSize, segmentSize);
+    }
+
+    /**
+     * Guided self-scheduling: each claim takes a share of the remaining input proportional to
+     * {@code 1 / (2 * workers)}, bounded by {@code [minSize, maxSize]}. Segments start large to keep the claim
+     * overhead low and shrink towards the end of the input, so that a slow worker holds up the others for at most
+     * one small segment.
+     */
+    static SegmentScheduler adaptive(long start, long end, int workers, long minSize, long maxSize) {
+        AtomicLong cursor = new AtomicLong(start);
+        return (worker, bounds) -> {
+            while (true) {
+                long position = cursor.get();
+                if (position >= end) {
+                    return false;
+                }
+                long size = Math.clamp((end - position) / (2L * workers), minSize, maxSize);
+                long segmentEnd = Segments.nextLine(Math.min(position + size, end), end);
+                if (cursor.compareAndSet(position, segmentEnd)) {
+                    bounds[0] = position;
+                    bounds[1] = segmentEnd;
+                    return true;
+                }
+            }
+        };
+    }
+
+    /**
+     * Splits {@code [start, end)} into one contiguous range per NUMA node, sized by the number of workers on the node,
+     * and schedules each range among the workers of its node only. A worker pinned to its node, see
+     * {@link NumaTopology}, thus only parses input its own node faulted into the page cache.
+     * {@code nodeOfWorker[i]} is the node of worker {@code i}.
+     */
+    static SegmentScheduler perNode(long start, long end, int[] nodeOfWorker, int nodes, Scheduling scheduling) {
+        int workers = nodeOfWorker.length;
+        int[] workersOnNode = new int[nodes];
+        int[] localIndex = new int[workers];
+        for (int worker = 0; worker < workers; worker++) {
+            localIndex[worker] = workersOnNode[nodeOfWorker[worker]]++;
+        }
+        SegmentScheduler[] nodeSchedulers = new SegmentScheduler[nodes];
+        long rangeStart = start;
+        int workersBefore = 0;
+        for (int node = 0; node < nodes; node++) {
+            workersBefore += workersOnNode[node];
+            // Nodes without workers, only possible with fewer workers than nodes, get an empty range.
+            long rangeEnd = workersBefore == 0 ? start : Segments.nextLine(start + (end - start) * workersBefore / workers, end);
+            if (workersOnNode[node] > 0) {
+                nodeSchedulers[node] = scheduling.create(rangeStart, rangeEnd, workersOnNode[node]);
+            }
+            rangeStart = rangeEnd;
+        }
+        return (worker, bounds) -> nodeSchedulers[nodeOfWorker[worker]].next(localIndex[worker], bounds);
+    }
+
+    /**
+     * Drains {@code schedulers} one after the other, so that several inputs are processed by one pool of workers.
+     * Each worker moves on to the next scheduler by itself once the current one has nothing left for it, so workers
+     * finishing a small input early start on the next one instead of waiting.
+     */
+    static SegmentScheduler concat(List<SegmentScheduler> schedulers, int workers) {
+        // Only ever touched by the worker itself.
+        int[] current = new int[workers];
+        return (worker, bounds) -> {
+            for (int i = current[worker]; i < schedulers.size(); i++) {
+                if (schedulers.get(i).next(worker, bounds)) {
+                    current[worker] = i;
+                    return true;
+                }
+            }
+            current[worker] = schedulers.size();
+            return false;
+        };
+    }
+}
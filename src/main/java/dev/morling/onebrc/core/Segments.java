@@ -0,0 +1,71 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import static dev.morling.onebrc.core.Memory.UNSAFE;
+
+/**
+ * Splitting of mapped memory into line-aligned segments.
+ */
+public final class Segments {
+
+    private Segments() {
+    }
+
+    /**
+     * Splits {@code [start, end)} into {@code count} segments of roughly equal size. The returned array holds
+     * {@code count + 1} addresses, segment {@code i} being {@code [bounds[i], bounds[i + 1])}. Every inner bound is
+     * moved to the first byte after a {@code '\n'}, so each segment only contains whole lines.
+     */
+    public static long[] split(long start, long end, int count) {
+        long segmentSize = (end - start + count - 1) / count;
+        long[] bounds = new long[count + 1];
+        bounds[0] = start;
+        for (int i = 1; i < count; ++i) {
+            bounds[i] = nextLine(Math.max(bounds[i - 1], start + i * segmentSize), end);
+        }
+        bounds[count] = end;
+        return bounds;
+    }
+
+    /**
+     * Returns the address of the first line starting at or after {@code address}, i.e. {@code address} itself if
+     * the previous byte is a {@code '\n'}, or {@code end} if there is none.
+     */
+    static long nextLine(long address, long end) {
+        if (address >= end) {
+            return end;
+        }
+        // Align to first row start.
+        address--;
+        while (address < end && UNSAFE.getByte(address++) != '\n') {
+            // nop
+        }
+        return Math.min(address, end);
+    }
+
+    /**
+     * Returns the address after the last {@code '\n'} in {@code [start, end)}, or {@code start} if there is none.
+     * Used to leave out a line that is still being appended to.
+     */
+    public static long lastLineEnd(long start, long end) {
+        long address = end;
+        while (address > start && UNSAFE.getByte(address - 1) != '\n') {
+            address--;
+        }
+        return address;
+    }
+}
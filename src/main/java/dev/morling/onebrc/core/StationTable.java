@@ -0,0 +1,262 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static dev.morling.onebrc.core.Memory.BYTE_ARRAY_OFFSET;
+import static dev.morling.onebrc.core.Memory.UNSAFE;
+
+/**
+ * Open-addressing table from station name to {@link Stats}, owned by a single worker thread. Lookups compare the
+ * key directly against the mapped input, names are only copied out when a station is seen for the first time.
+ */
+public final class StationTable {
+
+    private static final int CAPACITY_BITS = 17;
+    static final int CAPACITY = 1 << CAPACITY_BITS;
+    // The challenge guarantees at most 10,000 stations, keep the load factor low for short probe sequences.
+    static final int MAX_SIZE = CAPACITY / 2;
+
+    static final class Entry {
+        final byte[] name;
+        final int hash;
+        final Stats stats;
+        // Dense dictionary id, stations are numbered in insertion order.
+        final int id;
+
+        Entry(byte[] name, int hash, Stats stats, int id) {
+            this.name = name;
+            this.hash = hash;
+            this.stats = stats;
+            this.id = id;
+        }
+    }
+
+    final Entry[] entries = new Entry[CAPACITY];
+    int size;
+    private final Histogram.Mode histogramMode;
+
+    public StationTable() {
+        this(null);
+    }
+
+    /**
+     * Creates a table whose stats collect a histogram of the given mode, or none if {@code histogramMode} is
+     * {@code null}.
+     */
+    public StationTable(Histogram.Mode histogramMode) {
+        this.histogramMode = histogramMode;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Hash of a station name as computed on the fly by {@link SegmentParser}: starting from the first byte of the name
+     * shifted left by 19 bits, the little-endian 4-byte words following it, the last word being zero-padded, are each
+     * XORed into the hash rotated left by 5 bits. The rotation keeps equal words at different positions from
+     * cancelling out, as they do in a plain XOR, and the first byte keeps names differing only there apart.
+     */
+    public static int hash(byte[] name) {
+        int hash = name[0] << 19;
+        // The parser always ends on the word holding the ';', so a name ending on a word boundary adds an empty word.
+        for (int i = 1; i <= name.length; i += 4) {
+            int word = 0;
+            for (int j = Math.min(name.length - i, 4) - 1; j >= 0; j--) {
+                word = (word << 8) | (name[i + j] & 0xFF);
+            }
+            hash = Integer.rotateLeft(hash, 5) ^ word;
+        }
+        return hash;
+    }
+
+    // Fibonacci hashing, the multiplication mixes all bits of the hash into the top bits used as the index.
+    static int index(int hash) {
+        return (hash * 0x9E3779B1) >>> (Integer.SIZE - CAPACITY_BITS);
+    }
+
+    /**
+     * Returns the stats for the name of {@code nameLength} bytes at {@code nameAddress}, creating them if needed.
+     */
+    public Stats find(long nameAddress, int nameLength, int hash) {
+        int tableIndex = index(hash);
+        while (true) {
+            Entry entry = entries[tableIndex];
+            if (entry == null) {
+                byte[] name = new byte[nameLength];
+                UNSAFE.copyMemory(null, nameAddress, name, BYTE_ARRAY_OFFSET, nameLength);
+                Stats stats = new Stats();
+                if (histogramMode != null) {
+                    stats.histogram = Histogram.create(histogramMode);
+                }
+                return insert(tableIndex, name, hash, stats).stats;
+            }
+            if (entry.hash == hash && matches(entry.name, nameAddress, nameLength)) {
+                return entry.stats;
+            }
+            // Collision, try next.
+            tableIndex = (tableIndex + 1) & (CAPACITY - 1);
+        }
+    }
+
+    /**
+     * Returns the dictionary id of the name of {@code nameLength} bytes at {@code nameAddress}, or -1 if the table
+     * does not contain it. Never modifies the table, so it may be called concurrently once the table is complete.
+     */
+    public int id(long nameAddress, int nameLength, int hash) {
+        int tableIndex = index(hash);
+        while (true) {
+            Entry entry = entries[tableIndex];
+            if (entry == null) {
+                return -1;
+            }
+            if (entry.hash == hash && matches(entry.name, nameAddress, nameLength)) {
+                return entry.id;
+            }
+            tableIndex = (tableIndex + 1) & (CAPACITY - 1);
+        }
+    }
+
+    /**
+     * Returns the names of all stations, indexed by dictionary id.
+     */
+    public byte[][] names() {
+        byte[][] names = new byte[size][];
+        for (Entry entry : entries) {
+            if (entry != null) {
+                names[entry.id] = entry.name;
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Returns the number of measurements accumulated in this table.
+     */
+    public long rows() {
+        long rows = 0;
+        for (Entry entry : entries) {
+            if (entry != null) {
+                rows += entry.stats.count;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the probe statistics of this table. As entries are never removed or moved, a station's probe sequence
+     * is the same on every lookup: its distance from its home slot plus one. The statistics are therefore derived
+     * from the layout instead of being counted in {@link #find}.
+     */
+    public TableStats stats() {
+        int displaced = 0;
+        int maxProbes = 0;
+        long lines = 0;
+        long probes = 0;
+        for (int i = 0; i < CAPACITY; i++) {
+            Entry entry = entries[i];
+            if (entry == null) {
+                continue;
+            }
+            int length = ((i - index(entry.hash)) & (CAPACITY - 1)) + 1;
+            if (length > 1) {
+                displaced++;
+            }
+            maxProbes = Math.max(maxProbes, length);
+            lines += entry.stats.count;
+            probes += length * entry.stats.count;
+        }
+        return new TableStats(size, lines, displaced, lines == 0 ? 0 : (double) probes / lines, maxProbes);
+    }
+
+    /**
+     * Accumulates all stations of {@code other} into this table.
+     */
+    public void merge(StationTable other) {
+        for (Entry entry : other.entries) {
+            if (entry != null) {
+                merge(entry.name, entry.hash, entry.stats);
+            }
+        }
+    }
+
+    void merge(byte[] name, int hash, Stats stats) {
+        int tableIndex = index(hash);
+        while (true) {
+            Entry entry = entries[tableIndex];
+            if (entry == null) {
+                Stats copy = new Stats();
+                copy.merge(stats);
+                insert(tableIndex, name, hash, copy);
+                return;
+            }
+            if (entry.hash == hash && Arrays.equals(entry.name, name)) {
+                entry.stats.merge(stats);
+                return;
+            }
+            tableIndex = (tableIndex + 1) & (CAPACITY - 1);
+        }
+    }
+
+    /**
+     * Accumulates all stations of this table into {@code target}, keyed by the decoded name.
+     */
+    public void putInto(Map<String, Stats> target) {
+        for (Entry entry : entries) {
+            if (entry == null) {
+                continue;
+            }
+            String name = new String(entry.name, StandardCharsets.UTF_8);
+            Stats current = target.get(name);
+            if (current == null) {
+                current = new Stats();
+                target.put(name, current);
+            }
+            current.merge(entry.stats);
+        }
+    }
+
+    private Entry insert(int tableIndex, byte[] name, int hash, Stats stats) {
+        if (++size > MAX_SIZE) {
+            throw new IllegalStateException("Too many distinct stations, at most " + MAX_SIZE + " are supported");
+        }
+        Entry entry = new Entry(name, hash, stats, size - 1);
+        entries[tableIndex] = entry;
+        return entry;
+    }
+
+    private static boolean matches(byte[] name, long address, int length) {
+        if (name.length != length) {
+            return false;
+        }
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            if (UNSAFE.getLong(name, BYTE_ARRAY_OFFSET + i) != UNSAFE.getLong(address + i)) {
+                return false;
+            }
+        }
+        for (; i < length; i++) {
+            if (name[i] != UNSAFE.getByte(address + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+/**
+ * Min/max/sum/count of the measurements of one station, all in tenths of a degree, plus an optional
+ * {@link Histogram} for percentiles. {@link #toString()} renders the {@code min/mean/max} form used by the challenge
+ * output.
+ */
+public final class Stats {
+    int min;
+    int max;
+    long sum;
+    long count;
+    Histogram histogram;
+
+    public Stats() {
+        this.min = Integer.MAX_VALUE;
+        this.max = Integer.MIN_VALUE;
+    }
+
+    public Stats(int min, int max, long sum, long count) {
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+        this.count = count;
+    }
+
+    public int min() {
+        return min;
+    }
+
+    public int max() {
+        return max;
+    }
+
+    public long sum() {
+        return sum;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Returns the histogram of the measurements, or {@code null} if the aggregation did not collect one.
+     */
+    public Histogram histogram() {
+        return histogram;
+    }
+
+    /**
+     * Returns the {@code percentile}th percentile in degrees, see {@link Histogram#percentile(double)}.
+     */
+    public double percentile(double percentile) {
+        if (histogram == null) {
+            throw new IllegalStateException("No histogram collected");
+        }
+        return histogram.percentile(percentile) / 10.0;
+    }
+
+    public double mean() {
+        return ((double) sum) / 10.0 / count;
+    }
+
+    // Accumulate a single measurement given in tenths of a degree.
+    public void add(int value) {
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        sum += value;
+        count++;
+        if (histogram != null) {
+            histogram.add(value);
+        }
+    }
+
+    // Accumulate another result into this one.
+    public void merge(Stats other) {
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sum += other.sum;
+        count += other.count;
+        if (other.histogram != null) {
+            if (histogram == null) {
+                histogram = Histogram.create(other.histogram.mode());
+            }
+            histogram.merge(other.histogram);
+        }
+    }
+
+    public String toString() {
+        return round(((double) min) / 10.0) + "/" + round(mean()) + "/" + round(((double) max) / 10.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10.0) / 10.0;
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+/**
+ * Shape of a {@link StationTable}: how many stations and lines it holds and how long its probe sequences are.
+ * {@code displaced} stations do not sit in their home slot, i.e. collided on insertion; {@code meanProbes} is the
+ * number of slots inspected per line, {@code maxProbes} the longest probe sequence of any station.
+ */
+public record TableStats(int stations, long lines, int displaced, double meanProbes, int maxProbes) {
+}
@@ -0,0 +1,109 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import static dev.morling.onebrc.core.Memory.UNSAFE;
+
+/**
+ * Branchless parser for temperatures of the form {@code -99.9} to {@code 99.9} with exactly one fractional digit,
+ * returning tenths of a degree. The value is read as one little-endian long, the position of the {@code '.'} aligns
+ * the digits and a single multiplication combines them, as in {@code CalculateAverage_merykitty}:
+ *
+ * <pre>
+ * long word = Temperatures.read(address, end);
+ * int value = Temperatures.parse(word);          // "-12.3\n..." -> -123
+ * address += Temperatures.length(word) + 1;      // skip value and '\n'
+ * </pre>
+ */
+public final class Temperatures {
+
+    private Temperatures() {
+    }
+
+    /**
+     * Reads the 8 bytes at {@code address} as a little-endian long, without reading at or beyond {@code end}: fewer
+     * bytes than that are zero-extended.
+     */
+    public static long read(long address, long end) {
+        if (address + Long.BYTES <= end) {
+            return UNSAFE.getLong(address);
+        }
+        long word = 0;
+        for (int i = 0; address + i < end; i++) {
+            word |= (UNSAFE.getByte(address + i) & 0xFFL) << (i << 3);
+        }
+        return word;
+    }
+
+    /**
+     * Parses the temperature at the start of {@code word}, which holds its bytes in little-endian order, into tenths
+     * of a degree. Bytes after the fractional digit are ignored.
+     */
+    public static int parse(long word) {
+        // '.' is the only byte with bit 4 clear among bytes 1 to 3, where digits have it set. '-' has it clear as well,
+        // but can only be byte 0, which the mask deliberately leaves out.
+        int dotPosition = Long.numberOfTrailingZeros(~word & 0x10101000L);
+        // All ones if the value starts with '-', zero otherwise.
+        long signed = (~word << 59) >> 63;
+        long withoutSign = word & ~(signed & 0xFF);
+        // Align the digits so that tens, ones and tenths end up in bytes 1, 2 and 4, the tens byte being zero if absent.
+        long digits = (withoutSign << (28 - dotPosition)) & 0x0F000F0F00L;
+        // tens * 100 + ones * 10 + tenths lands in bits 32 to 41.
+        long absValue = ((digits * 0x640A0001L) >>> 32) & 0x3FF;
+        return (int) ((absValue ^ signed) - signed);
+    }
+
+    /**
+     * Returns the number of bytes of the temperature at the start of {@code word}, from 3 for {@code 1.2} to 5 for
+     * {@code -12.3}.
+     */
+    public static int length(long word) {
+        return (Long.numberOfTrailingZeros(~word & 0x10101000L) >>> 3) + 2;
+    }
+
+    /**
+     * Parses the temperature in {@code bytes[offset, offset + length)} into tenths of a degree.
+     */
+    public static int parse(byte[] bytes, int offset, int length) {
+        long word = 0;
+        for (int i = 0; i < length; i++) {
+            word |= (bytes[offset + i] & 0xFFL) << (i << 3);
+        }
+        return parse(word);
+    }
+
+    /**
+     * Parses the temperature in {@code chars[offset, offset + length)} into tenths of a degree.
+     */
+    public static int parse(char[] chars, int offset, int length) {
+        long word = 0;
+        for (int i = 0; i < length; i++) {
+            word |= (chars[offset + i] & 0xFFL) << (i << 3);
+        }
+        return parse(word);
+    }
+
+    /**
+     * Parses {@code value}, e.g. the part after the {@code ';'} of a line, into tenths of a degree.
+     */
+    public static int parse(CharSequence value) {
+        long word = 0;
+        for (int i = 0; i < value.length(); i++) {
+            word |= (value.charAt(i) & 0xFFL) << (i << 3);
+        }
+        return parse(word);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Merges the tables of {@code parties} workers pairwise along a binary tree, as the workers finish. Each node of the
+ * tree has a slot for the first of its two subtrees to finish: the worker arriving first parks its table there and is
+ * done, the second one takes it, merges it into its own table and moves up to the next level. After
+ * {@code ceil(log2(parties))} levels, the worker completing the root holds the result. Merges of different subtrees
+ * run in parallel, and there is no lock, only one compare-and-set per level; a slow worker only holds up the merges on
+ * its own path to the root.
+ *
+ * <pre>
+ * TreeMerge merge = new TreeMerge(threads);
+ * // on worker i, once done:
+ * merge.offer(i, table);
+ * // after all workers are done:
+ * StationTable result = merge.result();
+ * </pre>
+ */
+public final class TreeMerge {
+
+    private final int parties;
+    private final int levels;
+    // The slot of node n on level l, covering parties [n << (l + 1), (n + 1) << (l + 1)), is at l * parties + n.
+    private final AtomicReferenceArray<StationTable> slots;
+    private volatile StationTable result;
+
+    public TreeMerge(int parties) {
+        if (parties < 1) {
+            throw new IllegalArgumentException("parties must be positive: " + parties);
+        }
+        this.parties = parties;
+        this.levels = 32 - Integer.numberOfLeadingZeros(parties - 1);
+        this.slots = new AtomicReferenceArray<>(Math.max(levels, 1) * parties);
+    }
+
+    /**
+     * Hands in the table of {@code party}, which must not be used by the caller afterwards, and merges as far up the
+     * tree as possible. Each party offers exactly once.
+     */
+    public void offer(int party, StationTable table) {
+        int node = party;
+        for (int level = 0; level < levels; level++) {
+            int sibling = node ^ 1;
+            int parent = node >>> 1;
+            // Without any party in the sibling's subtree, there is nothing to wait for on this level.
+            if ((sibling << level) < parties) {
+                int slot = level * parties + parent;
+                if (slots.compareAndSet(slot, null, table)) {
+                    return;
+                }
+                StationTable other = slots.getAndSet(slot, null);
+                table.merge(other);
+            }
+            node = parent;
+        }
+        result = table;
+    }
+
+    /**
+     * The merged table, once all parties have offered theirs.
+     */
+    public StationTable result() {
+        return result;
+    }
+}
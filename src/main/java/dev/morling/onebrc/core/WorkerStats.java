@@ -0,0 +1,34 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a single worker did during one aggregation. {@code idleNanos} is the part of the aggregation's wall-clock
+ * time in which the worker was not parsing, mostly waiting for the slowest worker to finish. {@code mergeNanos} is the
+ * time the worker spent merging tables after parsing, see {@link TreeMerge}; zero with NUMA placement, where the
+ * tables are merged once all workers are done.
+ */
+public record WorkerStats(int worker, int segments, long bytes, long busyNanos, long idleNanos, long mergeNanos) {
+
+    @Override
+    public String toString() {
+        return "worker " + worker + ": " + segments + " segments, " + bytes + " bytes, busy "
+                + TimeUnit.NANOSECONDS.toMillis(busyNanos) + " ms, idle " + TimeUnit.NANOSECONDS.toMillis(idleNanos) + " ms, merge "
+                + TimeUnit.NANOSECONDS.toMillis(mergeNanos) + " ms";
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.morling.onebrc.core;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Runs a task on a number of platform threads and waits for all of them.
+ */
+final class Workers {
+
+    private Workers() {
+    }
+
+    static void run(int threads, IntConsumer task) {
+        Thread[] workers = new Thread[threads];
+        Throwable[] failures = new Throwable[threads];
+        for (int i = 0; i < threads; i++) {
+            int index = i;
+            workers[i] = Thread.ofPlatform().start(() -> {
+                try {
+                    task.accept(index);
+                }
+                catch (Throwable t) {
+                    failures[index] = t;
+                }
+            });
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for workers", e);
+        }
+        for (int i = 0; i < threads; i++) {
+            if (failures[i] != null) {
+                throw new IllegalStateException("Worker " + i + " failed", failures[i]);
+            }
+        }
+    }
+}
@@ -73,4 +73,55 @@ public class FastRandom {
     public int nextInt() {
         return next(32);
     }
+
+    /**
+     * All 64 bits of the next state, taking exactly one step like every
+     * other method except {@link #nextInt(int)}, which may reject values.
+     */
+    public long nextLong() {
+        next(0);
+        return this.seed;
+    }
+
+    /**
+     * Advances the generator by {@code steps} steps in O(log steps) time, so
+     * that a stream can be split into ranges generated independently. The
+     * xorshift step is linear over GF(2), so n steps are a multiplication
+     * with the n-th power of its 64x64 bit matrix, built from the
+     * precomputed powers of two.
+     */
+    public void jump(long steps) {
+        for (int bit = 0; steps != 0; bit++, steps >>>= 1) {
+            if ((steps & 1) != 0) {
+                this.seed = multiply(STEP_POWERS[bit], this.seed);
+            }
+        }
+    }
+
+    // STEP_POWERS[k] is the step matrix raised to 2^k, column i being the image of bit i
+    private static final long[][] STEP_POWERS = stepPowers();
+
+    private static long[][] stepPowers() {
+        long[][] powers = new long[64][64];
+        for (int i = 0; i < 64; i++) {
+            FastRandom unit = new FastRandom(1L << i);
+            powers[0][i] = unit.nextLong();
+        }
+        for (int k = 1; k < 64; k++) {
+            for (int i = 0; i < 64; i++) {
+                powers[k][i] = multiply(powers[k - 1], powers[k - 1][i]);
+            }
+        }
+        return powers;
+    }
+
+    private static long multiply(long[] matrix, long vector) {
+        long result = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                result ^= matrix[i];
+            }
+        }
+        return result;
+    }
 }
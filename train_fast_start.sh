@@ -0,0 +1,42 @@
+#!/bin/bash
+#
+#  Copyright 2023 The original authors
+#
+#  Licensed under the Apache License, Version 2.0 (the "License");
+#  you may not use this file except in compliance with the License.
+#  You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+#  Unless required by applicable law or agreed to in writing, software
+#  distributed under the License is distributed on an "AS IS" BASIS,
+#  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#  See the License for the specific language governing permissions and
+#  limitations under the License.
+#
+
+# Creates the startup archive used by fast_start.sh from one run of
+# calculate_average_<fork>.sh on the training file, by default a 10,000 station
+# sample, so that all classes of the solver's parse and output paths are archived.
+# Re-run after rebuilding the jar.
+
+set -eo pipefail
+
+if [ -z "$1" ]; then
+  echo "Usage: train_fast_start.sh <fork name> [<training file>]"
+  exit 1
+fi
+
+FORK=$1
+TRAINING_FILE=${2:-src/test/resources/samples/measurements-10000-unique-keys.txt}
+
+# The solvers read ./measurements.txt, so train in a directory of its own that
+# shares target/ with the repository.
+TRAINING_DIR=$(mktemp -d)
+ln -s "$(realpath "$TRAINING_FILE")" "$TRAINING_DIR/measurements.txt"
+ln -s "$PWD/target" "$TRAINING_DIR/target"
+ln -s "$PWD/fast_start.sh" "$TRAINING_DIR/fast_start.sh"
+(cd "$TRAINING_DIR" && FAST_START=train "$OLDPWD/calculate_average_$FORK.sh" > /dev/null)
+rm -r "${TRAINING_DIR:?}"
+
+ls -l target/fast-start/$FORK.*